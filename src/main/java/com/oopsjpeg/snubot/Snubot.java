@@ -1,21 +1,33 @@
 package com.oopsjpeg.snubot;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.oopsjpeg.snubot.command.CommandExecutor;
 import com.oopsjpeg.snubot.command.CommandManager;
 import com.oopsjpeg.snubot.command.CommandRegistry;
+import com.oopsjpeg.snubot.command.RateLimiter;
 import com.oopsjpeg.snubot.command.impl.dev.SaveAllCommand;
+import com.oopsjpeg.snubot.command.impl.dev.StatsCommand;
 import com.oopsjpeg.snubot.command.impl.general.*;
 import com.oopsjpeg.snubot.command.impl.mod.LogCommand;
 import com.oopsjpeg.snubot.command.impl.mod.ModRoleCommand;
+import com.oopsjpeg.snubot.command.impl.mod.PrefixCommand;
 import com.oopsjpeg.snubot.command.impl.mod.ReactIonRolesCommand;
 import com.oopsjpeg.snubot.data.impl.GuildData;
+import com.oopsjpeg.snubot.data.impl.MemberData;
 import com.oopsjpeg.snubot.data.impl.UserData;
+import com.oopsjpeg.snubot.manager.JournalManager;
 import com.oopsjpeg.snubot.manager.LevelManager;
 import com.oopsjpeg.snubot.manager.LogManager;
+import com.oopsjpeg.snubot.manager.MemberStoreManager;
 import com.oopsjpeg.snubot.manager.MongoManager;
+import com.oopsjpeg.snubot.manager.PermissionManager;
+import com.oopsjpeg.snubot.manager.ReconcileManager;
+import com.oopsjpeg.snubot.manager.RoleCacheManager;
+import com.oopsjpeg.snubot.manager.RoleSyncManager;
+import com.oopsjpeg.snubot.manager.SnapshotManager;
 import com.oopsjpeg.snubot.react.ReactManager;
+import com.oopsjpeg.snubot.react.ReactMessage;
 import com.oopsjpeg.snubot.util.BadSettingsException;
+import com.oopsjpeg.snubot.data.DataCache;
 import com.oopsjpeg.snubot.data.SaveData;
 import com.oopsjpeg.snubot.util.Settings;
 import discord4j.common.util.Snowflake;
@@ -32,9 +44,11 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.oopsjpeg.snubot.util.Settings.*;
 
@@ -42,7 +56,6 @@ public class Snubot
 {
     public static final Logger LOGGER = LoggerFactory.getLogger(Snubot.class);
     public static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors() + 1);
-    public static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
     private static Snubot instance;
 
@@ -50,8 +63,8 @@ public class Snubot
     private GatewayDiscordClient gateway;
 
     private final List<Manager> managerList = new ArrayList<>();
-    private final Map<String, UserData> userDataMap = new HashMap<>();
-    private final Map<String, GuildData> guildDataMap = new HashMap<>();
+    private DataCache<UserData> userDataCache;
+    private DataCache<GuildData> guildDataCache;
 
     public static void main(String[] args) throws IOException, BadSettingsException
     {
@@ -73,6 +86,13 @@ public class Snubot
     {
         loadSettings();
 
+        // Data is loaded from Mongo on first access and evicted once it's cold and saved
+        userDataCache = new DataCache<>("user(s)", id -> getMongoManager().fetchUserData(id), this::attach, SaveData::hasChanges,
+                d -> getMongoManager().flushUserData(d), d -> 1, settings.getInt(USER_CACHE_SIZE));
+        // Guilds are weighed by their members, which are cached along with them
+        guildDataCache = new DataCache<>("guild(s)", id -> getMongoManager().fetchGuildData(id), this::attach, this::isGuildDirty,
+                d -> getMongoManager().flushGuildData(d), d -> 1 + d.getMemberCount(), settings.getInt(GUILD_CACHE_WEIGHT));
+
         // Create client and log in
         DiscordClient client = DiscordClient.create(settings.get(Settings.TOKEN));
         gateway = client.login().block();
@@ -82,26 +102,58 @@ public class Snubot
             CommandRegistry registry = new CommandRegistry(settings.get(PREFIX));
             registry.addAll(Arrays.asList(new HelpCommand(), new LevelCommand(), new ReactIonRolesCommand(),
                     new SaveAllCommand(), new ModRoleCommand(), new LogCommand(), new ColorCommand(),
-                    new ProfileCommand(), new DailyCommand()));
+                    new ProfileCommand(), new DailyCommand(), new PrefixCommand(), new StatsCommand()));
 
-            addManager(new MongoManager(this, settings.get(MONGO_HOST), settings.get(MONGO_DATABASE)));
+            addManager(new MongoManager(this, settings.get(MONGO_HOST), settings.get(MONGO_DATABASE),
+                    settings.getInt(MONGO_BATCH_SIZE), settings.getInt(MONGO_BATCH_RETRIES)));
+            addManager(new MemberStoreManager(this, settings.get(MEMBER_STORE), settings.get(MEMBER_STORE_DIRECTORY)));
+            addManager(new JournalManager(this, settings.get(JOURNAL_DIRECTORY), settings.getInt(JOURNAL_SYNC_INTERVAL)));
+            addManager(new SnapshotManager(this, settings.get(SNAPSHOT_FILE)));
             addManager(new LogManager(this));
             addManager(new LevelManager(this));
+            addManager(new RoleSyncManager(this, settings.getInt(ROLE_SYNC_INTERVAL), settings.getInt(ROLE_SYNC_CONCURRENCY)));
+            addManager(new ReconcileManager(this, settings.getInt(ROLE_SYNC_CONCURRENCY)));
             addManager(new ReactManager(this));
+            addManager(new RoleCacheManager(this));
+            addManager(new PermissionManager(this, settings.getInt(PERMISSION_MEMBER_LIMIT)));
 
             // Create command registry
-            managerList.add(new CommandManager(this, registry));
+            managerList.add(new CommandManager(this, registry, new CommandExecutor(settings.getInt(COMMAND_THREADS),
+                    settings.getInt(COMMAND_QUEUE_SIZE), settings.getInt(COMMAND_GUILD_LIMIT),
+                    settings.getInt(COMMAND_USER_LIMIT), settings.getInt(COMMAND_TIMEOUT)),
+                    new RateLimiter(settings.getInt(RATE_LIMIT_WINDOW), settings.getInt(RATE_LIMIT_USER),
+                            settings.getInt(RATE_LIMIT_CHANNEL), settings.getInt(RATE_LIMIT_GUILD), settings.getInt(RATE_LIMIT_SIZE))));
+            // Replay changes that didn't make it to Mongo before anything is loaded
+            getJournalManager().start();
             // Register managers
             managerList.forEach(m -> m.register(gateway));
 
-            userDataMap.putAll(getMongoManager().fetchUserDataMap());
-            guildDataMap.putAll(getMongoManager().fetchGuildDataMap());
-            getReactManager().getMessageMap().putAll(getMongoManager().fetchReactMessageMap());
+            loadAll();
+            getReconcileManager().resumeAll();
 
             // Save data every 5 minutes
             SCHEDULER.scheduleAtFixedRate(this::saveAll, 1, 1, TimeUnit.MINUTES);
+            // Evict cold data
+            SCHEDULER.scheduleWithFixedDelay(userDataCache::evict, 15, 15, TimeUnit.SECONDS);
+            SCHEDULER.scheduleWithFixedDelay(() ->
+            {
+                guildDataCache.evict();
+                // Prefixes are only kept for guilds that are still cached
+                getCommandManager().getPrefixMatcher().prune();
+            }, 15, 15, TimeUnit.SECONDS);
+            // Snapshot data for quick restarts
+            SCHEDULER.scheduleWithFixedDelay(() -> getSnapshotManager().write(), settings.getInt(SNAPSHOT_INTERVAL),
+                    settings.getInt(SNAPSHOT_INTERVAL), TimeUnit.MINUTES);
             // Save data on shut down
-            Runtime.getRuntime().addShutdownHook(new Thread(this::saveAll));
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+            {
+                // Stop taking commands before the final save
+                getCommandManager().getExecutor().shutdown();
+                getLevelManager().shutdown();
+                saveAll();
+                getSnapshotManager().write();
+                getMemberStoreManager().close();
+            }));
 
             LOGGER.info("Logged in as " + event.getSelf().getUsername() + ".");
         });
@@ -138,20 +190,155 @@ public class Snubot
             if (settings.get(PREFIX).isEmpty()) throw new BadSettingsException("Prefix cannot be empty");
             if (settings.get(MONGO_DATABASE).isEmpty())
                 throw new BadSettingsException("MongoDB database name cannot be empty");
+            if (!settings.get(MONGO_BATCH_SIZE).matches("\\d+") || settings.getInt(MONGO_BATCH_SIZE) < 1)
+                throw new BadSettingsException("MongoDB batch size must be a positive number");
+            if (!settings.get(MONGO_BATCH_RETRIES).matches("\\d+"))
+                throw new BadSettingsException("MongoDB batch retries must be a number");
+            if (!settings.get(USER_CACHE_SIZE).matches("\\d+") || settings.getInt(USER_CACHE_SIZE) < 1)
+                throw new BadSettingsException("User cache size must be a positive number");
+            if (!settings.get(GUILD_CACHE_WEIGHT).matches("\\d+") || settings.getInt(GUILD_CACHE_WEIGHT) < 1)
+                throw new BadSettingsException("Guild cache weight must be a positive number");
+            if (settings.get(JOURNAL_DIRECTORY).isEmpty())
+                throw new BadSettingsException("Journal directory cannot be empty");
+            if (!settings.get(JOURNAL_SYNC_INTERVAL).matches("\\d+") || settings.getInt(JOURNAL_SYNC_INTERVAL) < 1)
+                throw new BadSettingsException("Journal sync interval must be a positive number");
+            if (settings.get(SNAPSHOT_FILE).isEmpty())
+                throw new BadSettingsException("Snapshot file cannot be empty");
+            if (!settings.get(SNAPSHOT_INTERVAL).matches("\\d+") || settings.getInt(SNAPSHOT_INTERVAL) < 1)
+                throw new BadSettingsException("Snapshot interval must be a positive number");
+            if (!settings.get(MEMBER_STORE).matches(MemberStoreManager.HEAP + "|" + MemberStoreManager.MAPPED))
+                throw new BadSettingsException("Member store must be " + MemberStoreManager.HEAP + " or " + MemberStoreManager.MAPPED);
+            if (settings.get(MEMBER_STORE_DIRECTORY).isEmpty())
+                throw new BadSettingsException("Member store directory cannot be empty");
+            if (!settings.get(ROLE_SYNC_INTERVAL).matches("\\d+") || settings.getInt(ROLE_SYNC_INTERVAL) < 1)
+                throw new BadSettingsException("Role sync interval must be a positive number");
+            if (!settings.get(ROLE_SYNC_CONCURRENCY).matches("\\d+") || settings.getInt(ROLE_SYNC_CONCURRENCY) < 1)
+                throw new BadSettingsException("Role sync concurrency must be a positive number");
+            if (!settings.get(COMMAND_THREADS).matches("\\d+") || settings.getInt(COMMAND_THREADS) < 1)
+                throw new BadSettingsException("Command threads must be a positive number");
+            if (!settings.get(COMMAND_QUEUE_SIZE).matches("\\d+") || settings.getInt(COMMAND_QUEUE_SIZE) < 1)
+                throw new BadSettingsException("Command queue size must be a positive number");
+            if (!settings.get(COMMAND_GUILD_LIMIT).matches("\\d+") || settings.getInt(COMMAND_GUILD_LIMIT) < 1)
+                throw new BadSettingsException("Command guild limit must be a positive number");
+            if (!settings.get(COMMAND_USER_LIMIT).matches("\\d+") || settings.getInt(COMMAND_USER_LIMIT) < 1)
+                throw new BadSettingsException("Command user limit must be a positive number");
+            if (!settings.get(COMMAND_TIMEOUT).matches("\\d+") || settings.getInt(COMMAND_TIMEOUT) < 1)
+                throw new BadSettingsException("Command timeout must be a positive number");
+            if (!settings.get(RATE_LIMIT_WINDOW).matches("\\d+") || settings.getInt(RATE_LIMIT_WINDOW) < 1)
+                throw new BadSettingsException("Rate limit window must be a positive number");
+            if (!settings.get(RATE_LIMIT_USER).matches("\\d+") || settings.getInt(RATE_LIMIT_USER) < 1)
+                throw new BadSettingsException("User rate limit must be a positive number");
+            if (!settings.get(RATE_LIMIT_CHANNEL).matches("\\d+") || settings.getInt(RATE_LIMIT_CHANNEL) < 1)
+                throw new BadSettingsException("Channel rate limit must be a positive number");
+            if (!settings.get(RATE_LIMIT_GUILD).matches("\\d+") || settings.getInt(RATE_LIMIT_GUILD) < 1)
+                throw new BadSettingsException("Guild rate limit must be a positive number");
+            if (!settings.get(RATE_LIMIT_SIZE).matches("\\d+") || settings.getInt(RATE_LIMIT_SIZE) < 1)
+                throw new BadSettingsException("Rate limit size must be a positive number");
+            if (!settings.get(PERMISSION_MEMBER_LIMIT).matches("\\d+") || settings.getInt(PERMISSION_MEMBER_LIMIT) < 1)
+                throw new BadSettingsException("Permission member limit must be a positive number");
+        }
+    }
+
+    private void loadAll()
+    {
+        MongoManager mongo = getMongoManager();
+        long start = System.nanoTime();
+        boolean preload = settings.getBoolean(PRELOAD_DATA);
+        List<CompletableFuture<?>> loadList = new ArrayList<>();
+
+        // Load each collection at the same time, straight into where it's kept
+        loadList.add(CompletableFuture.runAsync(() -> mongo.streamReactMessages(m -> getReactManager().getMessageMap().put(m.getId(), (ReactMessage) m.parent(getReactManager()))), SCHEDULER));
+
+        // Mapped member stores left by the last run only need what was saved after they were synced
+        MemberStoreManager memberStores = getMemberStoreManager();
+        long snapshotTime = getSnapshotManager().read();
+        long memberTime = memberStores.isWarm() ? memberStores.getSyncedTime() : snapshotTime;
+        if (snapshotTime >= 0)
+        {
+            // Only catch up on what was saved after the snapshot was taken
+            loadList.add(CompletableFuture.runAsync(() -> mongo.streamUserDataSince(snapshotTime, d ->
+            {
+                if (preload || userDataCache.contains(d.getId()))
+                    userDataCache.put(d.getId(), d);
+            }), SCHEDULER));
+            loadList.add(CompletableFuture.runAsync(() ->
+            {
+                mongo.streamGuildDataSince(snapshotTime, d ->
+                {
+                    GuildData old = guildDataCache.getIfPresent(d.getId());
+                    if (old != null)
+                        d.takeMembers(old);
+                    if (preload || old != null)
+                        guildDataCache.put(d.getId(), d);
+                });
+                mongo.streamMemberDataSince(memberTime, this::attachMemberData);
+            }, SCHEDULER));
+        }
+        else if (preload)
+        {
+            loadList.add(CompletableFuture.runAsync(() -> mongo.streamUserData(d -> userDataCache.put(d.getId(), d)), SCHEDULER));
+            loadList.add(CompletableFuture.runAsync(() ->
+            {
+                mongo.streamGuildData(d -> guildDataCache.put(d.getId(), d));
+                // Members need their guild, so they follow the guilds
+                if (memberStores.isWarm())
+                    mongo.streamMemberDataSince(memberTime, this::attachMemberData);
+                else
+                    mongo.streamMemberData(this::attachMemberData);
+            }, SCHEDULER));
         }
+
+        CompletableFuture.allOf(loadList.toArray(new CompletableFuture<?>[0])).join();
+        LOGGER.info("Loaded data in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+    }
+
+    private void attachMemberData(MemberData member)
+    {
+        GuildData data = guildDataCache.getIfPresent(member.getGuildId());
+        if (data != null)
+            data.putMemberData(member);
     }
 
     public void saveAll()
     {
-        userDataMap.values().stream().filter(SaveData::isMarkedForSave)
-                .peek(d -> d.setMarkedForSave(false))
-                .forEach(getMongoManager()::saveUserData);
-        guildDataMap.values().stream().filter(SaveData::isMarkedForSave)
-                .peek(d -> d.setMarkedForSave(false))
-                .forEach(getMongoManager()::saveGuildData);
-        getReactManager().getMessageMap().values().stream().filter(SaveData::isMarkedForSave)
-                .peek(d -> d.setMarkedForSave(false))
-                .forEach(getMongoManager()::saveReactMessage);
+        JournalManager journal = getJournalManager();
+        getMemberStoreManager().sync();
+        // Everything journaled so far is taken by this save
+        long segment = journal.rotate();
+
+        List<GuildData> guildDataList = guildDataCache.values();
+        CompletableFuture.allOf(
+                getMongoManager().saveUserDataList(userDataCache.values().stream().filter(SaveData::hasChanges)
+                        .collect(Collectors.toList())),
+                getMongoManager().saveGuildDataList(guildDataList.stream().filter(SaveData::hasChanges)
+                        .collect(Collectors.toList())),
+                getMongoManager().saveMemberStores(guildDataList),
+                getMongoManager().saveReactMessageList(getReactManager().getMessageMap().values().stream().filter(SaveData::hasChanges)
+                        .collect(Collectors.toList())))
+                // Failed writes are marked for save and journaled again, so the old segments can go either way
+                .thenRun(() -> journal.truncate(segment));
+    }
+
+    private void attach(UserData data)
+    {
+        data.setParent(this);
+        // Changed before it was cached, so the journal hasn't seen it yet
+        if (data.hasChanges())
+            data.touch();
+    }
+
+    private void attach(GuildData data)
+    {
+        data.setParent(this);
+        if (data.hasChanges())
+            data.touch();
+        if (data.getMemberStore().hasDirty())
+            data.touchMembers();
+    }
+
+    private boolean isGuildDirty(GuildData data)
+    {
+        return data.hasChanges() || data.getMemberStore().hasDirty();
     }
 
     public GatewayDiscordClient getGateway()
@@ -166,7 +353,7 @@ public class Snubot
 
     public <T extends Manager> T getManager(Class<? extends T> clazz)
     {
-        return (T) managerList.stream().filter(m -> m.getClass().equals(clazz)).findAny().orElse(null);
+        return managerList.stream().filter(m -> m.getClass().equals(clazz)).findAny().map(clazz::cast).orElse(null);
     }
 
     public void addManager(Manager manager)
@@ -189,6 +376,41 @@ public class Snubot
         return getManager(MongoManager.class);
     }
 
+    public MemberStoreManager getMemberStoreManager()
+    {
+        return getManager(MemberStoreManager.class);
+    }
+
+    public RoleSyncManager getRoleSyncManager()
+    {
+        return getManager(RoleSyncManager.class);
+    }
+
+    public ReconcileManager getReconcileManager()
+    {
+        return getManager(ReconcileManager.class);
+    }
+
+    public RoleCacheManager getRoleCacheManager()
+    {
+        return getManager(RoleCacheManager.class);
+    }
+
+    public PermissionManager getPermissionManager()
+    {
+        return getManager(PermissionManager.class);
+    }
+
+    public JournalManager getJournalManager()
+    {
+        return getManager(JournalManager.class);
+    }
+
+    public SnapshotManager getSnapshotManager()
+    {
+        return getManager(SnapshotManager.class);
+    }
+
     public LevelManager getLevelManager()
     {
         return getManager(LevelManager.class);
@@ -199,19 +421,20 @@ public class Snubot
         return getManager(ReactManager.class);
     }
 
-    public Map<String, UserData> getUserDataMap()
+    public DataCache<UserData> getUserDataCache()
     {
-        return userDataMap;
+        return userDataCache;
     }
 
-    public Map<String, GuildData> getGuildDataMap()
+    public DataCache<GuildData> getGuildDataCache()
     {
-        return guildDataMap;
+        return guildDataCache;
     }
 
     public UserData getUserData(String id)
     {
-        return (UserData) userDataMap.get(id).parent(this);
+        UserData data = userDataCache.get(id);
+        return data != null ? (UserData) data.parent(this) : null;
     }
 
     public UserData getUserData(Snowflake id)
@@ -226,7 +449,8 @@ public class Snubot
 
     public GuildData getGuildData(String id)
     {
-        return (GuildData) guildDataMap.get(id).parent(this);
+        GuildData data = guildDataCache.get(id);
+        return data != null ? (GuildData) data.parent(this) : null;
     }
 
     public GuildData getGuildData(Snowflake id)
@@ -241,7 +465,7 @@ public class Snubot
 
     public UserData addUserData(String id)
     {
-        userDataMap.put(id, new UserData(id));
+        userDataCache.put(id, new UserData(id));
         return getUserData(id);
     }
 
@@ -257,10 +481,18 @@ public class Snubot
 
     public GuildData addGuildData(String id)
     {
-        guildDataMap.put(id, new GuildData(id));
+        guildDataCache.put(id, createGuildData(id));
         return getGuildData(id);
     }
 
+    private GuildData createGuildData(String id)
+    {
+        GuildData data = new GuildData(id, getMemberStoreManager().open(Long.parseLong(id)));
+        // Members are only loaded for guilds that have a document
+        data.markForSave();
+        return data;
+    }
+
     public GuildData addGuildData(Snowflake id)
     {
         return addGuildData(id.asString());
@@ -273,7 +505,7 @@ public class Snubot
 
     public void removeUserData(String id)
     {
-        userDataMap.remove(id);
+        userDataCache.remove(id);
     }
 
     public void removeUserData(Snowflake id)
@@ -288,7 +520,7 @@ public class Snubot
 
     public void removeGuildData(String id)
     {
-        guildDataMap.remove(id);
+        guildDataCache.remove(id);
     }
 
     public void removeGuildData(Snowflake id)
@@ -303,7 +535,7 @@ public class Snubot
 
     public boolean hasUserData(String id)
     {
-        return userDataMap.containsKey(id);
+        return userDataCache.get(id) != null;
     }
 
     public boolean hasUserData(Snowflake id)
@@ -318,7 +550,7 @@ public class Snubot
 
     public boolean hasGuildData(String id)
     {
-        return guildDataMap.containsKey(id);
+        return guildDataCache.get(id) != null;
     }
 
     public boolean hasGuildData(Snowflake id)
@@ -333,9 +565,7 @@ public class Snubot
 
     public UserData getOrAddUserData(String id)
     {
-        if (!hasUserData(id))
-            return addUserData(id);
-        return getUserData(id);
+        return (UserData) userDataCache.get(id, UserData::new).parent(this);
     }
 
     public UserData getOrAddUserData(Snowflake id)
@@ -350,9 +580,7 @@ public class Snubot
 
     public GuildData getOrAddGuildData(String id)
     {
-        if (!hasGuildData(id))
-            return addGuildData(id);
-        return getGuildData(id);
+        return (GuildData) guildDataCache.get(id, this::createGuildData).parent(this);
     }
 
     public GuildData getOrAddGuildData(Snowflake id)
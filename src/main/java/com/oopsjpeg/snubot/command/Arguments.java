@@ -0,0 +1,166 @@
+package com.oopsjpeg.snubot.command;
+
+import java.util.Arrays;
+
+// Tokens of a command message, kept as offsets into it until they're asked for
+public class Arguments
+{
+    private static final char QUOTE = '"';
+    private static final char ESCAPE = '\\';
+
+    private final String source;
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    // Tokens with quotes or escapes inside can't be cut straight out of the source
+    private boolean[] raws = new boolean[8];
+    private int size;
+
+    private Arguments(String source)
+    {
+        this.source = source;
+    }
+
+    public static Arguments parse(String source)
+    {
+        return parse(source, 0);
+    }
+
+    public static Arguments parse(String source, int from)
+    {
+        Arguments arguments = new Arguments(source);
+        int length = source.length();
+
+        // A quote only opens a group if there's another quote after it to close it
+        int lastQuote = -1;
+        for (int i = 0; i < length; i++)
+        {
+            if (isEscape(source, i, length))
+                i++;
+            else if (source.charAt(i) == QUOTE)
+                lastQuote = i;
+        }
+
+        int i = from;
+        while (i < length)
+        {
+            while (i < length && Character.isWhitespace(source.charAt(i)))
+                i++;
+            if (i >= length)
+                break;
+
+            int start = i;
+            int quotes = 0;
+            boolean escaped = false;
+            boolean quoted = false;
+            while (i < length)
+            {
+                char c = source.charAt(i);
+                if (isEscape(source, i, length))
+                {
+                    escaped = true;
+                    i += 2;
+                    continue;
+                }
+                if (c == QUOTE)
+                {
+                    if (quoted)
+                        quoted = false;
+                    else if (i < lastQuote)
+                        quoted = true;
+                    quotes++;
+                }
+                else if (!quoted && Character.isWhitespace(c))
+                    break;
+                i++;
+            }
+
+            // A token that's just one quoted group is still a plain cut of the source
+            int end = i;
+            if (!escaped && quotes == 2 && source.charAt(start) == QUOTE && source.charAt(end - 1) == QUOTE)
+                arguments.add(start + 1, end - 1, false);
+            else
+                arguments.add(start, end, escaped || quotes > 0);
+        }
+        return arguments;
+    }
+
+    private static boolean isEscape(String source, int i, int length)
+    {
+        // Only quotes and backslashes are escaped, so other backslashes are left as they are
+        return source.charAt(i) == ESCAPE && i + 1 < length && (source.charAt(i + 1) == QUOTE || source.charAt(i + 1) == ESCAPE);
+    }
+
+    private void add(int start, int end, boolean raw)
+    {
+        if (size == starts.length)
+        {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            raws = Arrays.copyOf(raws, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        raws[size] = raw;
+        size++;
+    }
+
+    public String get(int index)
+    {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Argument " + index + " of " + size);
+        if (!raws[index])
+            return source.substring(starts[index], ends[index]);
+
+        // Drop the quotes and escape characters, keeping what they stood for
+        StringBuilder builder = new StringBuilder(ends[index] - starts[index]);
+        for (int i = starts[index]; i < ends[index]; i++)
+        {
+            char c = source.charAt(i);
+            if (isEscape(source, i, ends[index]))
+                builder.append(source.charAt(++i));
+            else if (c != QUOTE)
+                builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    public boolean matches(int index, String s)
+    {
+        // Compares in place, without cutting the token out
+        return index < size && !raws[index] && ends[index] - starts[index] == s.length()
+                && source.regionMatches(true, starts[index], s, 0, s.length());
+    }
+
+    public int getStart(int index)
+    {
+        return starts[index];
+    }
+
+    public int getEnd(int index)
+    {
+        return ends[index];
+    }
+
+    public String[] toArray(int from)
+    {
+        String[] array = new String[Math.max(0, size - from)];
+        for (int i = 0; i < array.length; i++)
+            array[i] = get(from + i);
+        return array;
+    }
+
+    public String getSource()
+    {
+        return source;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+}
@@ -5,14 +5,15 @@ import com.oopsjpeg.snubot.command.exception.CommandException;
 import com.oopsjpeg.snubot.command.exception.DeveloperOnlyException;
 import com.oopsjpeg.snubot.command.exception.GuildOnlyException;
 import com.oopsjpeg.snubot.command.exception.PermissionException;
-import com.oopsjpeg.snubot.util.Util;
-import discord4j.core.object.entity.ApplicationInfo;
 import discord4j.core.object.entity.Message;
 import discord4j.core.object.entity.User;
 import discord4j.core.object.entity.channel.MessageChannel;
 import discord4j.core.object.entity.channel.TextChannel;
 import discord4j.rest.util.PermissionSet;
 
+import java.util.Collections;
+import java.util.Map;
+
 public interface Command
 {
     void execute(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException;
@@ -20,11 +21,10 @@ public interface Command
     default void tryExecute(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
     {
         User author = message.getAuthor().get();
-        ApplicationInfo appInfo = message.getClient().getApplicationInfo().block();
         MessageChannel channel = message.getChannel().block();
 
         // Check if command is developer only
-        if (isDeveloperOnly() && !author.getId().equals(appInfo.getOwnerId()))
+        if (isDeveloperOnly() && !bot.getPermissionManager().isOwner(author.getId()))
             throw new DeveloperOnlyException();
         // Check if command is guild only
         if (isGuildOnly())
@@ -33,7 +33,7 @@ public interface Command
                 throw new GuildOnlyException();
 
             // Check user permissions
-            if (hasPermissions() && !Util.hasPermissions((TextChannel) channel, author.getId(), getPermissions()))
+            if (hasPermissions() && !bot.getPermissionManager().hasPermissions((TextChannel) channel, author.getId(), getPermissions()))
                 throw new PermissionException();
         }
 
@@ -42,6 +42,23 @@ public interface Command
 
     String[] getAliases();
 
+    default Map<String, Subcommand> getSubcommands()
+    {
+        return Collections.emptyMap();
+    }
+
+    // Tokens taken from the rate limits, so heavier commands use them up faster
+    default int getWeight(String[] args)
+    {
+        return 1;
+    }
+
+    // Milliseconds the command can run for, or 0 for the executor's default
+    default long getTimeout()
+    {
+        return 0;
+    }
+
     default String getDescription()
     {
         return null;
@@ -0,0 +1,227 @@
+package com.oopsjpeg.snubot.command;
+
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.util.LongIntMap;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Runs commands off the gateway threads, so their blocking calls only hold up themselves
+public class CommandExecutor
+{
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final int capacity;
+    private final int guildLimit;
+    private final int userLimit;
+    private final long timeout;
+
+    // Invocations per guild and user, queued or running
+    private final LongIntMap guildCountMap = new LongIntMap();
+    private final LongIntMap userCountMap = new LongIntMap();
+    private int pending;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+
+    public CommandExecutor(int threads, int queueSize, int guildLimit, int userLimit, long timeout)
+    {
+        ExecutorService virtualExecutor = newVirtualExecutor();
+        virtual = virtualExecutor != null;
+        if (virtual)
+            executor = virtualExecutor;
+        else
+        {
+            AtomicInteger count = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(queueSize), r ->
+            {
+                Thread thread = new Thread(r, "command-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        capacity = threads + queueSize;
+        this.guildLimit = guildLimit;
+        this.userLimit = userLimit;
+        this.timeout = timeout;
+    }
+
+    private static ExecutorService newVirtualExecutor()
+    {
+        // Virtual threads only exist on newer JDKs than this builds against, so they're looked up by name
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException | UnsupportedOperationException error)
+        {
+            return null;
+        }
+    }
+
+    public boolean submit(long guildId, long userId, long timeout, Runnable task)
+    {
+        return submit(guildId, userId, timeout, task, null);
+    }
+
+    public boolean submit(long guildId, long userId, long timeout, Runnable task, Runnable onTimeout)
+    {
+        synchronized (this)
+        {
+            // Virtual threads don't run out, so the pool's size still bounds how much can pile up
+            if (pending >= capacity
+                    || (guildId != 0 && count(guildCountMap, guildId) >= guildLimit)
+                    || count(userCountMap, userId) >= userLimit)
+            {
+                rejected.incrementAndGet();
+                return false;
+            }
+            pending++;
+            if (guildId != 0)
+                guildCountMap.put(guildId, count(guildCountMap, guildId) + 1);
+            userCountMap.put(userId, count(userCountMap, userId) + 1);
+        }
+
+        Invocation invocation = new Invocation(guildId, userId, timeout > 0 ? timeout : this.timeout, task, onTimeout);
+        queued.incrementAndGet();
+        try
+        {
+            executor.execute(invocation);
+        }
+        catch (RejectedExecutionException error)
+        {
+            queued.decrementAndGet();
+            release(guildId, userId);
+            rejected.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private static int count(LongIntMap map, long key)
+    {
+        int count = map.get(key);
+        return count == LongIntMap.MISSING ? 0 : count;
+    }
+
+    private synchronized void release(long guildId, long userId)
+    {
+        pending--;
+        if (guildId != 0)
+            decrement(guildCountMap, guildId);
+        decrement(userCountMap, userId);
+    }
+
+    private static void decrement(LongIntMap map, long key)
+    {
+        // Idle guilds and users are dropped, so the maps only hold what's in flight
+        int count = count(map, key) - 1;
+        if (count > 0)
+            map.put(key, count);
+        else
+            map.remove(key);
+    }
+
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    public boolean isVirtual()
+    {
+        return virtual;
+    }
+
+    public int getQueueDepth()
+    {
+        return queued.get();
+    }
+
+    public int getRunningCount()
+    {
+        return running.get();
+    }
+
+    public long getCompletedCount()
+    {
+        return completed.get();
+    }
+
+    public long getRejectedCount()
+    {
+        return rejected.get();
+    }
+
+    public long getTimedOutCount()
+    {
+        return timedOut.get();
+    }
+
+    private class Invocation implements Runnable
+    {
+        private final long guildId;
+        private final long userId;
+        private final long timeout;
+        private final Runnable task;
+        private final Runnable onTimeout;
+        private boolean finished;
+
+        private Invocation(long guildId, long userId, long timeout, Runnable task, Runnable onTimeout)
+        {
+            this.guildId = guildId;
+            this.userId = userId;
+            this.timeout = timeout;
+            this.task = task;
+            this.onTimeout = onTimeout;
+        }
+
+        @Override
+        public void run()
+        {
+            queued.decrementAndGet();
+            running.incrementAndGet();
+
+            // The timeout starts once the command does. Interrupting it could break I/O it shares with
+            // everything else, like the journal's channel or Mongo, so it's left to finish on its own
+            ScheduledFuture<?> timer = Snubot.SCHEDULER.schedule(() ->
+            {
+                // Checked under the same lock the command finishes with, so one that just finished isn't counted
+                synchronized (this)
+                {
+                    if (finished)
+                        return;
+                }
+                timedOut.incrementAndGet();
+                Snubot.LOGGER.warn("Command ran past its timeout of " + timeout + "ms and is still running");
+                // Its limits are kept until it really finishes, so a stuck guild or user can't pile up more behind it
+                if (onTimeout != null)
+                    onTimeout.run();
+            }, timeout, TimeUnit.MILLISECONDS);
+            try
+            {
+                task.run();
+            }
+            catch (RuntimeException error)
+            {
+                Snubot.LOGGER.warn("Command failed outside of its handler: " + error.getMessage());
+            }
+            finally
+            {
+                synchronized (this)
+                {
+                    finished = true;
+                }
+                timer.cancel(false);
+                running.decrementAndGet();
+                completed.incrementAndGet();
+                release(guildId, userId);
+            }
+        }
+    }
+}
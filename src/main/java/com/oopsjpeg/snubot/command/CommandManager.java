@@ -4,57 +4,115 @@ import com.oopsjpeg.snubot.Manager;
 import com.oopsjpeg.snubot.Snubot;
 import com.oopsjpeg.snubot.command.exception.CommandException;
 import com.oopsjpeg.snubot.util.ChatUtil;
-import com.oopsjpeg.snubot.util.Util;
+import discord4j.common.util.Snowflake;
 import discord4j.core.GatewayDiscordClient;
+import discord4j.core.event.domain.guild.GuildDeleteEvent;
 import discord4j.core.event.domain.message.MessageCreateEvent;
 import discord4j.core.object.entity.Message;
 import discord4j.core.object.entity.User;
 import discord4j.core.object.entity.channel.MessageChannel;
 
+import java.util.concurrent.TimeUnit;
+
 public class CommandManager implements Manager
 {
     private final Snubot parent;
     private final CommandRegistry registry;
+    private final PrefixMatcher prefixMatcher;
+    private final CommandExecutor executor;
+    private final RateLimiter rateLimiter;
 
-    public CommandManager(Snubot parent, CommandRegistry registry)
+    public CommandManager(Snubot parent, CommandRegistry registry, CommandExecutor executor, RateLimiter rateLimiter)
     {
         this.parent = parent;
         this.registry = registry;
+        this.executor = executor;
+        this.rateLimiter = rateLimiter;
+        prefixMatcher = new PrefixMatcher(parent, registry.getPrefix());
     }
 
     public void onMessage(MessageCreateEvent event)
     {
-        GatewayDiscordClient client = event.getClient();
         Message message = event.getMessage();
-        MessageChannel channel = message.getChannel().block();
         User author = message.getAuthor().orElse(null);
+        if (author == null || author.isBot())
+            return;
+
+        // Most messages aren't commands, so turn them away before anything's cut out or fetched
         String content = message.getContent();
+        long guildId = event.getGuildId().map(Snowflake::asLong).orElse(0L);
+        int start = prefixMatcher.match(guildId, content);
+        if (start < 0)
+            return;
 
-        if (author != null && channel != null && !author.isBot() && content.toLowerCase().startsWith(registry.getPrefix()))
-        {
-            // Split the content into command syntax
-            String[] split = content.split(" ");
-            String alias = split[0].replaceFirst(registry.getPrefix(), "");
-            String[] args = Util.buildArguments(content);
+        // Split the content into command syntax, with the alias right up against the prefix
+        Arguments arguments = Arguments.parse(content, start);
+        if (arguments.isEmpty() || arguments.getStart(0) != start)
+            return;
+        String alias = arguments.get(0);
 
-            Command command = registry.find(alias);
+        Command command = registry.find(alias);
 
-            if (command != null)
+        if (command != null)
+        {
+            String[] args = arguments.toArray(1);
+
+            // Limited commands are dropped before they cost any REST calls, apart from one notice
+            long wait = rateLimiter.tryAcquire(guildId, message.getChannelId().asLong(), author.getId().asLong(), command.getWeight(args));
+            if (wait != 0)
             {
-                try
-                {
-                    command.tryExecute(message, alias, args, registry, parent);
-                }
-                catch (CommandException error)
-                {
-                    channel.createEmbed(ChatUtil.error(author, error.getMessage())).block();
-                }
-                catch (Exception error)
-                {
-                    channel.createEmbed(ChatUtil.error(author, "Unhandled error: `" + error.getMessage() + "`\nContact the developer about this error."));
-                    error.printStackTrace();
-                }
+                if (wait > 0)
+                    message.getChannel()
+                            .flatMap(c -> c.createEmbed(ChatUtil.error(author, "Slow down! Commands are available again in **"
+                                    + TimeUnit.MILLISECONDS.toSeconds(wait + 999) + "** second(s).")))
+                            .subscribe();
+                return;
             }
+
+            // The author's roles come with the message, so permission checks on them don't wait on Discord
+            event.getMember().ifPresent(parent.getPermissionManager()::putMember);
+
+            // The gateway thread only hands the command off, it never waits on it
+            if (!executor.submit(guildId, author.getId().asLong(), command.getTimeout(), () -> execute(command, message, author, guildId, alias, args),
+                    () -> message.getChannel()
+                            .flatMap(c -> c.createEmbed(ChatUtil.error(author, "That command is taking too long. It may still finish in a moment.")))
+                            .subscribe()))
+                message.getChannel()
+                        .flatMap(c -> c.createEmbed(ChatUtil.error(author, "Too many commands are running right now. Try again in a moment.")))
+                        .subscribe();
+        }
+    }
+
+    private void execute(Command command, Message message, User author, long guildId, String alias, String[] args)
+    {
+        MessageChannel channel = message.getChannel().block();
+        if (channel == null)
+            return;
+
+        // Commands hold on to the guild and author's data while they run, so neither is evicted under them
+        String guildKey = Long.toString(guildId);
+        String userKey = author.getId().asString();
+        if (guildId != 0)
+            parent.getGuildDataCache().pin(guildKey);
+        parent.getUserDataCache().pin(userKey);
+        try
+        {
+            command.tryExecute(message, alias, args, registry, parent);
+        }
+        catch (CommandException error)
+        {
+            channel.createEmbed(ChatUtil.error(author, error.getMessage())).block();
+        }
+        catch (Exception error)
+        {
+            channel.createEmbed(ChatUtil.error(author, "Unhandled error: `" + error.getMessage() + "`\nContact the developer about this error.")).block();
+            error.printStackTrace();
+        }
+        finally
+        {
+            if (guildId != 0)
+                parent.getGuildDataCache().unpin(guildKey);
+            parent.getUserDataCache().unpin(userKey);
         }
     }
 
@@ -63,6 +121,21 @@ public class CommandManager implements Manager
         return registry;
     }
 
+    public PrefixMatcher getPrefixMatcher()
+    {
+        return prefixMatcher;
+    }
+
+    public CommandExecutor getExecutor()
+    {
+        return executor;
+    }
+
+    public RateLimiter getRateLimiter()
+    {
+        return rateLimiter;
+    }
+
     @Override
     public Snubot getParent()
     {
@@ -72,6 +145,8 @@ public class CommandManager implements Manager
     @Override
     public void register(GatewayDiscordClient gateway)
     {
+        prefixMatcher.setSelfId(gateway.getSelfId().asLong());
         gateway.on(MessageCreateEvent.class).subscribe(this::onMessage);
+        gateway.on(GuildDeleteEvent.class).subscribe(e -> prefixMatcher.invalidate(e.getGuildId().asLong()));
     }
 }
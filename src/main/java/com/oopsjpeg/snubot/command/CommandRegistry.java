@@ -1,23 +1,79 @@
 package com.oopsjpeg.snubot.command;
 
-import java.util.Arrays;
-import java.util.HashSet;
+import java.util.*;
 
 public class CommandRegistry extends HashSet<Command>
 {
     private final String prefix;
+    // Lowercase aliases and subcommand names, indexed as commands are added
+    private final Map<String, Command> aliasMap = new HashMap<>();
+    private final Map<Command, Map<String, Subcommand>> subcommandMap = new IdentityHashMap<>();
 
     public CommandRegistry(final String prefix)
     {
         this.prefix = prefix.toLowerCase();
     }
 
+    private static String key(String name)
+    {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public boolean add(Command command)
+    {
+        if (contains(command))
+            return false;
+
+        // Check everything first, so a rejected command leaves nothing half indexed
+        Set<String> aliasSet = new HashSet<>();
+        for (String alias : command.getAliases())
+        {
+            Command existing = aliasMap.get(key(alias));
+            if (existing != null || !aliasSet.add(key(alias)))
+                throw new IllegalArgumentException("Alias " + alias + " of " + command.getClass().getSimpleName()
+                        + " is already taken by " + (existing != null ? existing : command).getClass().getSimpleName());
+        }
+        Map<String, Subcommand> subcommands = new LinkedHashMap<>();
+        command.getSubcommands().forEach((name, subcommand) ->
+        {
+            if (subcommands.putIfAbsent(key(name), subcommand) != null)
+                throw new IllegalArgumentException("Subcommand " + name + " of " + command.getClass().getSimpleName() + " is defined twice");
+        });
+
+        aliasSet.forEach(alias -> aliasMap.put(alias, command));
+        if (!subcommands.isEmpty())
+            subcommandMap.put(command, subcommands);
+        return super.add(command);
+    }
+
+    @Override
+    public boolean remove(Object o)
+    {
+        if (!super.remove(o))
+            return false;
+        aliasMap.values().removeIf(c -> c == o);
+        subcommandMap.remove(o);
+        return true;
+    }
+
+    @Override
+    public void clear()
+    {
+        super.clear();
+        aliasMap.clear();
+        subcommandMap.clear();
+    }
+
     public Command find(String alias)
     {
-        return stream()
-                .filter(c -> Arrays.stream(c.getAliases())
-                        .anyMatch(a -> a.equalsIgnoreCase(alias)))
-                .findAny().orElse(null);
+        return aliasMap.get(key(alias));
+    }
+
+    public Subcommand findSubcommand(Command command, String name)
+    {
+        Map<String, Subcommand> subcommands = subcommandMap.get(command);
+        return subcommands != null ? subcommands.get(key(name)) : null;
     }
 
     public String format(Command command)
@@ -25,6 +81,11 @@ public class CommandRegistry extends HashSet<Command>
         return prefix + command.getAliases()[0];
     }
 
+    public String formatSubcommands(Command command)
+    {
+        return "<" + String.join("/", subcommandMap.getOrDefault(command, Collections.emptyMap()).keySet()) + ">";
+    }
+
     public String getPrefix()
     {
         return prefix;
@@ -62,4 +62,22 @@ public class CommandUtil
     {
         return tryInt(s, type, Integer.MIN_VALUE, max);
     }
+
+    public static double tryDouble(String s, String type, double min, double max) throws CommandException
+    {
+        double d;
+        try
+        {
+            d = Double.parseDouble(s);
+        }
+        catch (NumberFormatException ignored)
+        {
+            throw new CommandException("Invalid " + type + " specified.");
+        }
+        if (!(d >= min))
+            throw new CommandException("Invalid " + type + " specified. Value cannot be less than " + min + ".");
+        if (d > max)
+            throw new CommandException("Invalid " + type + " specified. Value cannot be more than " + max + ".");
+        return d;
+    }
 }
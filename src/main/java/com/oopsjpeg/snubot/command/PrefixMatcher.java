@@ -0,0 +1,164 @@
+package com.oopsjpeg.snubot.command;
+
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.data.impl.GuildData;
+import com.oopsjpeg.snubot.util.LongObjectMap;
+import com.oopsjpeg.snubot.util.LongSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+// Works out where the command starts in a message, if it is one
+public class PrefixMatcher
+{
+    // Enough for every cached guild, with room for guilds that have no data
+    private static final int MAX_PREFIXES = 50_000;
+
+    private final Snubot parent;
+    private final String defaultPrefix;
+    // Each guild's prefix, resolved once and kept until it's changed or the guild leaves the cache
+    private final LongObjectMap<String> prefixMap = new LongObjectMap<>();
+    // Guilds that aren't cached are loaded off the event threads, one load per guild at a time
+    private final LongSet loadingSet = new LongSet();
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(r ->
+    {
+        Thread thread = new Thread(r, "prefix-load");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile String mention;
+    private volatile String nicknameMention;
+
+    public PrefixMatcher(Snubot parent, String defaultPrefix)
+    {
+        this.parent = parent;
+        this.defaultPrefix = defaultPrefix.toLowerCase();
+    }
+
+    public int match(long guildId, String content)
+    {
+        if (content.isEmpty())
+            return -1;
+        char first = content.charAt(0);
+
+        // Mentions all start the same way, so other messages skip straight past them
+        if (first == '<' && mention != null)
+        {
+            int end = matchMention(content, mention);
+            if (end < 0)
+                end = matchMention(content, nicknameMention);
+            if (end >= 0)
+                return end;
+        }
+
+        String prefix = getPrefix(guildId);
+        // Most messages are turned away here, on their first character
+        if (Character.toLowerCase(first) != prefix.charAt(0))
+            return -1;
+        return content.regionMatches(true, 0, prefix, 0, prefix.length()) ? prefix.length() : -1;
+    }
+
+    private static int matchMention(String content, String mention)
+    {
+        if (!content.startsWith(mention))
+            return -1;
+        // Commands after a mention are usually spaced out from it
+        int end = mention.length();
+        while (end < content.length() && Character.isWhitespace(content.charAt(end)))
+            end++;
+        return end;
+    }
+
+    public String getPrefix(long guildId)
+    {
+        // Direct messages have no guild, so they always take the default
+        if (guildId == 0)
+            return defaultPrefix;
+        String prefix = prefixMap.get(guildId);
+        if (prefix == null)
+        {
+            // Only cached guilds are read here, since loading one can go to Mongo
+            String id = Long.toString(guildId);
+            GuildData data = parent.getGuildDataCache().getIfPresent(id);
+            if (data == null)
+            {
+                // Until it's loaded the default is matched, and mentions work either way
+                load(guildId, id);
+                return defaultPrefix;
+            }
+            // Past the limit the prefix is still right, it's just resolved again next time
+            if (prefixMap.size() >= MAX_PREFIXES)
+                return resolve(data);
+            // Resolved under the map's lock, so a prefix set meanwhile can't be overwritten with the old one
+            prefix = prefixMap.computeIfAbsent(guildId, k -> resolve(data));
+        }
+        return prefix;
+    }
+
+    private String resolve(GuildData data)
+    {
+        return data.hasPrefix() ? data.getPrefix() : defaultPrefix;
+    }
+
+    private void load(long guildId, String id)
+    {
+        if (!loadingSet.add(guildId))
+            return;
+        try
+        {
+            CompletableFuture.runAsync(() ->
+            {
+                // Guilds with no data at all keep the default, so they aren't looked up on every message
+                if (parent.getGuildData(id) == null && prefixMap.size() < MAX_PREFIXES)
+                    prefixMap.putIfAbsent(guildId, defaultPrefix);
+            }, loader).whenComplete((v, error) ->
+            {
+                loadingSet.remove(guildId);
+                if (error != null)
+                    Snubot.LOGGER.warn("Failed to load guild ID " + guildId + " for its prefix: " + error.getMessage());
+            });
+        }
+        catch (RejectedExecutionException error)
+        {
+            loadingSet.remove(guildId);
+        }
+    }
+
+    public void update(long guildId, String prefix)
+    {
+        prefixMap.put(guildId, prefix != null ? prefix : defaultPrefix);
+    }
+
+    public void invalidate(long guildId)
+    {
+        prefixMap.remove(guildId);
+    }
+
+    public void prune()
+    {
+        // Guilds that were evicted are resolved again if they're back, so only cached ones are kept
+        List<Long> idList = new ArrayList<>();
+        prefixMap.forEach((guildId, prefix) ->
+        {
+            if (!parent.getGuildDataCache().contains(Long.toString(guildId)))
+                idList.add(guildId);
+        });
+        idList.forEach(this::invalidate);
+    }
+
+    public void setSelfId(long selfId)
+    {
+        mention = "<@" + selfId + ">";
+        nicknameMention = "<@!" + selfId + ">";
+    }
+
+    public String getDefaultPrefix()
+    {
+        return defaultPrefix;
+    }
+}
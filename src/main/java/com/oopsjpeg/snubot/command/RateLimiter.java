@@ -0,0 +1,144 @@
+package com.oopsjpeg.snubot.command;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Token buckets for commands by user, channel and guild, each refilling over the same window
+public class RateLimiter
+{
+    // How many idle buckets one acquire can sweep out
+    private static final int EXPIRE_STEPS = 2;
+
+    private final Clock clock;
+    private final long window;
+    private final Buckets userBuckets;
+    private final Buckets channelBuckets;
+    private final Buckets guildBuckets;
+
+    public RateLimiter(long window, int userCapacity, int channelCapacity, int guildCapacity, int maxBuckets)
+    {
+        this(Clock.systemUTC(), window, userCapacity, channelCapacity, guildCapacity, maxBuckets);
+    }
+
+    public RateLimiter(Clock clock, long window, int userCapacity, int channelCapacity, int guildCapacity, int maxBuckets)
+    {
+        this.clock = clock;
+        this.window = window;
+        userBuckets = new Buckets(userCapacity, maxBuckets);
+        channelBuckets = new Buckets(channelCapacity, maxBuckets);
+        guildBuckets = new Buckets(guildCapacity, maxBuckets);
+    }
+
+    // Returns 0 if the command can go ahead, the milliseconds until it could if a notice is due, or -1 if one was already sent
+    public synchronized long tryAcquire(long guildId, long channelId, long userId, int weight)
+    {
+        long now = clock.millis();
+        Bucket user = userBuckets.refill(userId, now);
+        Bucket channel = channelBuckets.refill(channelId, now);
+        // Direct messages have no guild to share a bucket with
+        Bucket guild = guildId != 0 ? guildBuckets.refill(guildId, now) : null;
+
+        // Every bucket has to afford it, otherwise none of them are charged
+        Buckets limiting = user.tokens < userBuckets.cost(weight) ? userBuckets
+                : channel.tokens < channelBuckets.cost(weight) ? channelBuckets
+                : guild != null && guild.tokens < guildBuckets.cost(weight) ? guildBuckets
+                : null;
+        if (limiting == null)
+        {
+            user.tokens -= userBuckets.cost(weight);
+            channel.tokens -= channelBuckets.cost(weight);
+            if (guild != null)
+                guild.tokens -= guildBuckets.cost(weight);
+            return 0;
+        }
+
+        // Whoever is being limited hears about it once per window, however much they keep trying
+        Bucket bucket = limiting == userBuckets ? user : limiting == channelBuckets ? channel : guild;
+        if (now - bucket.noticed < window)
+            return -1;
+        bucket.noticed = now;
+        return Math.max(1, (long) Math.ceil((limiting.cost(weight) - bucket.tokens) * window / limiting.capacity));
+    }
+
+    public synchronized int size()
+    {
+        return userBuckets.size() + channelBuckets.size() + guildBuckets.size();
+    }
+
+    private static class Bucket
+    {
+        private double tokens;
+        private long updated;
+        private long noticed = Long.MIN_VALUE / 2;
+    }
+
+    private class Buckets extends LinkedHashMap<Long, Bucket>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final int maxBuckets;
+
+        private Buckets(int capacity, int maxBuckets)
+        {
+            // Access order puts the longest idle bucket first
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.maxBuckets = maxBuckets;
+        }
+
+        private int cost(int weight)
+        {
+            // Anything heavier than a full bucket would never get through
+            return Math.min(weight, capacity);
+        }
+
+        private Bucket refill(long id, long now)
+        {
+            // Swept first, so the bucket handed back is never the one taken out
+            expire(now);
+            Bucket bucket = get(id);
+            if (bucket == null)
+            {
+                // A missing bucket is a full one, which is why idle ones can be dropped
+                bucket = new Bucket();
+                bucket.tokens = capacity;
+                bucket.updated = now;
+                put(id, bucket);
+            }
+            else
+            {
+                bucket.tokens = Math.min(capacity, bucket.tokens + (double) (now - bucket.updated) * capacity / window);
+                bucket.updated = now;
+            }
+            return bucket;
+        }
+
+        private void expire(long now)
+        {
+            Iterator<Bucket> iterator = values().iterator();
+            for (int i = 0; i < EXPIRE_STEPS && iterator.hasNext(); i++)
+            {
+                Bucket bucket = iterator.next();
+                if (!isIdle(bucket, now))
+                    break;
+                iterator.remove();
+            }
+        }
+
+        private boolean isIdle(Bucket bucket, long now)
+        {
+            // Refilled all the way and past its notice window, so it'd be the same made fresh
+            double tokens = bucket.tokens + (double) (now - bucket.updated) * capacity / window;
+            return tokens >= capacity && now - bucket.noticed >= window;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Bucket> eldest)
+        {
+            return size() > maxBuckets;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.oopsjpeg.snubot.command;
+
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.command.exception.CommandException;
+import discord4j.core.object.entity.Message;
+
+@FunctionalInterface
+public interface Subcommand
+{
+    // Gets the same arguments as its command, so args[0] is still the subcommand's name
+    void execute(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException;
+}
@@ -8,6 +8,8 @@ import discord4j.core.object.entity.Message;
 import discord4j.core.object.entity.User;
 import discord4j.core.object.entity.channel.MessageChannel;
 
+import java.util.concurrent.TimeUnit;
+
 public class SaveAllCommand implements Command
 {
     @Override
@@ -25,6 +27,19 @@ public class SaveAllCommand implements Command
         return new String[]{"saveall"};
     }
 
+    @Override
+    public long getTimeout()
+    {
+        // Saving everything can take a while on a large bot
+        return TimeUnit.MINUTES.toMillis(5);
+    }
+
+    @Override
+    public int getWeight(String[] args)
+    {
+        return 5;
+    }
+
     @Override
     public String getDescription()
     {
@@ -0,0 +1,55 @@
+package com.oopsjpeg.snubot.command.impl.dev;
+
+import com.oopsjpeg.snubot.command.Command;
+import com.oopsjpeg.snubot.util.ChatUtil;
+import com.oopsjpeg.snubot.command.CommandExecutor;
+import com.oopsjpeg.snubot.command.CommandRegistry;
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.manager.LevelManager;
+import discord4j.core.object.entity.Message;
+import discord4j.core.object.entity.User;
+import discord4j.core.object.entity.channel.MessageChannel;
+
+public class StatsCommand implements Command
+{
+    @Override
+    public void execute(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot)
+    {
+        User author = message.getAuthor().get();
+        MessageChannel channel = message.getChannel().block();
+        LevelManager levels = bot.getLevelManager();
+        CommandExecutor executor = bot.getCommandManager().getExecutor();
+        String content = "**Commands**" + (executor.isVirtual() ? " (virtual threads)" : "")
+                + "\nQueued: " + executor.getQueueDepth()
+                + "\nRunning: " + executor.getRunningCount()
+                + "\nCompleted: " + executor.getCompletedCount()
+                + "\nRejected: " + executor.getRejectedCount()
+                + "\nTimed out: " + executor.getTimedOutCount()
+                + "\n\n**Message Rewards**"
+                + "\nQueued: " + levels.getQueueDepth()
+                + "\nWaiting on a guild: " + levels.getPendingCount()
+                + "\nFolded: " + levels.getFoldedCount()
+                + "\nDropped: " + levels.getDroppedCount()
+                + "\nLast fold: " + levels.getLastFoldTime() + " us"
+                + "\nSlowest fold: " + levels.getMaxFoldTime() + " us";
+        channel.createEmbed(ChatUtil.info(author, content)).block();
+    }
+
+    @Override
+    public String[] getAliases()
+    {
+        return new String[]{"stats"};
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return "Show how the bot is keeping up.";
+    }
+
+    @Override
+    public boolean isDeveloperOnly()
+    {
+        return true;
+    }
+}
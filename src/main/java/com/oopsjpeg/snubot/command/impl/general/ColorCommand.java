@@ -1,6 +1,7 @@
 package com.oopsjpeg.snubot.command.impl.general;
 
 import com.oopsjpeg.snubot.command.Command;
+import com.oopsjpeg.snubot.command.Subcommand;
 import com.oopsjpeg.snubot.data.impl.GuildData;
 import com.oopsjpeg.snubot.data.impl.MemberData;
 import com.oopsjpeg.snubot.util.ChatUtil;
@@ -19,13 +20,33 @@ import discord4j.core.object.entity.channel.TextChannel;
 import discord4j.rest.util.Permission;
 import discord4j.rest.util.PermissionSet;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class ColorCommand implements Command
 {
+    private final Map<String, Subcommand> subcommandMap = new LinkedHashMap<>();
+
+    public ColorCommand()
+    {
+        subcommandMap.put("add", this::add);
+        subcommandMap.put("remove", this::remove);
+        subcommandMap.put("clear", this::clear);
+        subcommandMap.put("level", this::level);
+    }
+
     @Override
     public void execute(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
     {
+        // Anything that isn't a subcommand is taken as a color name
+        Subcommand subcommand = args.length > 0 ? registry.findSubcommand(this, args[0]) : null;
+        if (subcommand != null)
+        {
+            subcommand.execute(message, alias, args, registry, bot);
+            return;
+        }
+
         TextChannel channel = message.getChannel().ofType(TextChannel.class).block();
         Guild guild = channel.getGuild().block();
         User author = message.getAuthor().orElse(null);
@@ -39,94 +60,111 @@ public class ColorCommand implements Command
             String colors = data.getColoring().getRoleSet().stream().map(r -> '`' + r.getName() + '`').collect(Collectors.joining(", "));
             channel.createEmbed(ChatUtil.info(author, "Available colors: " + colors + ".\n\nSet your color with `" + registry.format(this) + " <color>`.")).block();
         }
-        else if (args[0].equals("add"))
+        else
         {
-            tryEditPerms(channel, author);
-
-            if (args.length < 2)
-                throw new InvalidUsageException(this, registry, "add <role>");
+            MemberData memberData = data.getOrAddMemberData(author);
+            if (memberData.getLevel() < data.getColoring().getLevelRequired())
+                throw new CommandException("You need to be at least level **" + (data.getColoring().getLevelRequired() + 1) + "** to set your color.");
 
-            Role role = CommandUtil.tryRole(guild, args[1]);
-            if (data.getColoring().hasRole(role))
-                throw new CommandException("That role is already added.");
+            Role role = data.getColoring().getRoleSet().stream()
+                    .filter(r -> r.getName().equalsIgnoreCase(args[0])) // Name
+                    .findAny().orElse(null);
+            if (role == null)
+                throw new CommandException("Invalid role specified.");
 
-            data.getColoring().addRole(role);
-            data.markForSave();
+            data.getColoring().setUserColor(author, role);
 
-            channel.createEmbed(ChatUtil.success(author, "Added **" + role.getName() + "** to colors.")).block();
+            channel.createEmbed(ChatUtil.success(author, "Set color to **" + role.getName() + "**.")).block();
         }
-        else if (args[0].equals("remove"))
-        {
-            tryEditPerms(channel, author);
+    }
 
-            if (args.length < 2)
-                throw new InvalidUsageException(this, registry, "remove <role>");
+    private void add(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        TextChannel channel = message.getChannel().ofType(TextChannel.class).block();
+        Guild guild = channel.getGuild().block();
+        User author = message.getAuthor().orElse(null);
+        GuildData data = bot.getGuildData(guild);
 
-            Role role = CommandUtil.tryRole(guild, args[1]);
-            if (!data.getColoring().hasRole(role))
-                throw new CommandException("That role is not added.");
+        tryEditPerms(bot, channel, author);
 
-            data.getColoring().removeRole(role);
-            data.markForSave();
+        if (args.length < 2)
+            throw new InvalidUsageException(this, registry, "add <role>");
 
-            channel.createEmbed(ChatUtil.success(author, "Removed **" + role.getName() + "** from colors.")).block();
-        }
-        else if (args[0].equals("clear"))
-        {
-            tryEditPerms(channel, author);
+        Role role = CommandUtil.tryRole(guild, args[1]);
+        if (data.getColoring().hasRole(role))
+            throw new CommandException("That role is already added.");
 
-            data.getColoring().clearRoles();
-            data.markForSave();
+        data.getColoring().addRole(role);
 
-            channel.createEmbed(ChatUtil.success(author, "Remove all roles from colors.")).block();
-        }
-        else if (args[0].equals("level"))
-        {
-            tryEditPerms(channel, author);
-
-            if (args.length < 2)
-            {
-                if (!data.getColoring().hasLevelRequired())
-                    throw new InvalidUsageException(this, registry, "level <level>");
-                channel.createEmbed(ChatUtil.info(author, "The level requirement for colors is **" + (data.getColoring().getLevelRequired() + 1) + "**.")).block();
-            }
-            else
-            {
-                int level = args[1].equalsIgnoreCase("none") ? 0 : CommandUtil.tryIntMin(args[1], "level", 1) - 1;
+        channel.createEmbed(ChatUtil.success(author, "Added **" + role.getName() + "** to colors.")).block();
+    }
+
+    private void remove(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        TextChannel channel = message.getChannel().ofType(TextChannel.class).block();
+        Guild guild = channel.getGuild().block();
+        User author = message.getAuthor().orElse(null);
+        GuildData data = bot.getGuildData(guild);
+
+        tryEditPerms(bot, channel, author);
 
-                data.getColoring().setLevelRequired(level);
-                data.markForSave();
+        if (args.length < 2)
+            throw new InvalidUsageException(this, registry, "remove <role>");
 
-                if (level == 0)
-                    channel.createEmbed(ChatUtil.success(author, "Disabled level requirement for colors.")).block();
-                else
-                    channel.createEmbed(ChatUtil.success(author, "Set level requirement for colors to **" + (level + 1) + "**.")).block();
-            }
+        Role role = CommandUtil.tryRole(guild, args[1]);
+        if (!data.getColoring().hasRole(role))
+            throw new CommandException("That role is not added.");
+
+        data.getColoring().removeRole(role);
+
+        channel.createEmbed(ChatUtil.success(author, "Removed **" + role.getName() + "** from colors.")).block();
+    }
+
+    private void clear(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        TextChannel channel = message.getChannel().ofType(TextChannel.class).block();
+        Guild guild = channel.getGuild().block();
+        User author = message.getAuthor().orElse(null);
+        GuildData data = bot.getGuildData(guild);
+
+        tryEditPerms(bot, channel, author);
+
+        data.getColoring().clearRoles();
+
+        channel.createEmbed(ChatUtil.success(author, "Remove all roles from colors.")).block();
+    }
+
+    private void level(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        TextChannel channel = message.getChannel().ofType(TextChannel.class).block();
+        Guild guild = channel.getGuild().block();
+        User author = message.getAuthor().orElse(null);
+        GuildData data = bot.getGuildData(guild);
+
+        tryEditPerms(bot, channel, author);
+
+        if (args.length < 2)
+        {
+            if (!data.getColoring().hasLevelRequired())
+                throw new InvalidUsageException(this, registry, "level <level>");
+            channel.createEmbed(ChatUtil.info(author, "The level requirement for colors is **" + (data.getColoring().getLevelRequired() + 1) + "**.")).block();
         }
         else
         {
-            MemberData memberData = data.getOrAddMemberData(author);
-            if (memberData.getLevel() < data.getColoring().getLevelRequired())
-                throw new CommandException("You need to be at least level **" + (data.getColoring().getLevelRequired() + 1) + "** to set your color.");
-            if (args.length < 1)
-                throw new InvalidUsageException(this, registry, "<color>");
+            int level = args[1].equalsIgnoreCase("none") ? 0 : CommandUtil.tryIntMin(args[1], "level", 1) - 1;
 
-            Role role = data.getColoring().getRoleSet().stream()
-                    .filter(r -> r.getName().equalsIgnoreCase(args[0])) // Name
-                    .findAny().orElse(null);
-            if (role == null)
-                throw new CommandException("Invalid role specified.");
-
-            data.getColoring().setUserColor(author, role);
-            data.markForSave();
+            data.getColoring().setLevelRequired(level);
 
-            channel.createEmbed(ChatUtil.success(author, "Set color to **" + role.getName() + "**.")).block();
+            if (level == 0)
+                channel.createEmbed(ChatUtil.success(author, "Disabled level requirement for colors.")).block();
+            else
+                channel.createEmbed(ChatUtil.success(author, "Set level requirement for colors to **" + (level + 1) + "**.")).block();
         }
     }
 
-    private void tryEditPerms(TextChannel channel, User user) throws PermissionException
+    private void tryEditPerms(Snubot bot, TextChannel channel, User user) throws PermissionException
     {
-        if (!Util.hasPermissions(channel, user.getId(), PermissionSet.of(Permission.MANAGE_ROLES)))
+        if (!bot.getPermissionManager().hasPermissions(channel, user.getId(), PermissionSet.of(Permission.MANAGE_ROLES)))
             throw new PermissionException();
     }
 
@@ -136,6 +174,12 @@ public class ColorCommand implements Command
         return new String[]{"color", "colour"};
     }
 
+    @Override
+    public Map<String, Subcommand> getSubcommands()
+    {
+        return subcommandMap;
+    }
+
     @Override
     public String getDescription()
     {
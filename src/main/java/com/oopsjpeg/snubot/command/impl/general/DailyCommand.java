@@ -23,16 +23,13 @@ public class DailyCommand implements Command
         Guild guild = message.getGuild().block();
         MemberData data = bot.getOrAddGuildData(guild).getOrAddMemberData(author);
 
-        if (!data.hasDaily())
-            throw new CommandException("Your **Daily** is available in " + Util.timeDiff(LocalDateTime.now(), data.getLastDailyTime().plusDays(1)) + ".");
-
-        MessageChannel channel = message.getChannel().block();
-
         int coins = (int) data.getDailyCoins();
         int xp = (int) data.getDailyXp();
 
-        data.daily();
-        data.getParent().markForSave();
+        if (!data.claimDaily())
+            throw new CommandException("Your **Daily** is available in " + Util.timeDiff(LocalDateTime.now(MemberData.getClock()), data.getLastDailyTime().plusDays(1)) + ".");
+
+        MessageChannel channel = message.getChannel().block();
 
         channel.createEmbed(ChatUtil.info(author, "Collected **" + Util.comma(coins) + "** coin(s) and **" + Util.comma(xp)
                 + "** XP (" + Util.comma(data.getXp()) + " / " + Util.comma(data.getMaxXp()) + ") from **Daily**.")).block();
@@ -1,9 +1,12 @@
 package com.oopsjpeg.snubot.command.impl.general;
 
 import com.oopsjpeg.snubot.command.Command;
+import com.oopsjpeg.snubot.command.Subcommand;
 import com.oopsjpeg.snubot.data.impl.GuildData;
-import com.oopsjpeg.snubot.data.impl.LevelRole;
+import com.oopsjpeg.snubot.data.impl.Leveling;
 import com.oopsjpeg.snubot.data.impl.MemberData;
+import com.oopsjpeg.snubot.data.impl.XpCurve;
+import com.oopsjpeg.snubot.manager.ReconcileManager;
 import com.oopsjpeg.snubot.util.ChatUtil;
 import com.oopsjpeg.snubot.command.CommandRegistry;
 import com.oopsjpeg.snubot.command.CommandUtil;
@@ -20,117 +23,260 @@ import discord4j.core.object.entity.User;
 import discord4j.core.object.entity.channel.TextChannel;
 import discord4j.rest.util.Permission;
 import discord4j.rest.util.PermissionSet;
+import reactor.core.publisher.Flux;
 
-import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class LevelCommand implements Command
 {
+    private final Map<String, Subcommand> subcommandMap = new LinkedHashMap<>();
+
+    public LevelCommand()
+    {
+        subcommandMap.put("addrole", this::addRole);
+        subcommandMap.put("removerole", this::removeRole);
+        subcommandMap.put("list", this::list);
+        subcommandMap.put("sync", this::sync);
+        subcommandMap.put("max", this::max);
+        subcommandMap.put("curve", this::curve);
+        subcommandMap.put("cooldown", this::cooldown);
+        subcommandMap.put("reconcile", this::reconcile);
+    }
+
     @Override
     public void execute(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
     {
-        User author = message.getAuthor().get();
-        TextChannel channel = message.getChannel().cast(TextChannel.class).block();
-        Guild guild = message.getGuild().block();
-
         // Show level in the current server
         if (args.length == 0)
         {
+            User author = message.getAuthor().get();
+            TextChannel channel = message.getChannel().cast(TextChannel.class).block();
+            Guild guild = message.getGuild().block();
+
             MemberData data = bot.getOrAddGuildData(guild).getOrAddMemberData(author);
             channel.createEmbed(Embeds.profile(data)).block();
         }
         // Perform a level command
         else
         {
-            // Add a level-based role
-            if (args[0].equalsIgnoreCase("addrole"))
-            {
-                tryEditPerms(channel, author);
-
-                if (args.length < 3)
-                    throw new InvalidUsageException(this, registry, "addrole <role> <level>");
-
-                GuildData guildData = bot.getOrAddGuildData(guild);
-                Role role = CommandUtil.tryRole(guild, args[1]);
-                int level = CommandUtil.tryInt(args[2], "level", 1, guildData.getLeveling().getMaxLevel() + 1) - 1;
-
-                guildData.getLeveling().addRole(role, level);
-                guildData.markForSave();
-
-                channel.createEmbed(ChatUtil.success(author, "Added **" + role.getName() + "** to level **" + (level + 1) + "** in **" + guild.getName() + "**.")).block();
-            }
-            // Remove a level-based role
-            else if (args[0].equalsIgnoreCase("removerole"))
-            {
-                tryEditPerms(channel, author);
-
-                if (args.length < 2)
-                    throw new InvalidUsageException(this, registry, "removerole <role>");
-
-                GuildData guildData = bot.getOrAddGuildData(guild);
-                tryRolesNotEmpty(guild, guildData);
-                Role role = CommandUtil.tryRole(guild, args[1]);
-
-                if (!guildData.getLeveling().hasRole(role))
-                    throw new CommandException("**" + role.getName() + "** is not set to any level.");
-
-                guildData.getLeveling().removeRole(role);
-                guildData.markForSave();
-
-                channel.createEmbed(ChatUtil.success(author, "Removed **" + role.getName() + "** from level-based roles in **" + guild.getName() + "**.")).block();
-            }
-            // List all level-based roles
-            else if (args[0].equalsIgnoreCase("list"))
-            {
-                GuildData guildData = bot.getOrAddGuildData(guild);
-                tryRolesNotEmpty(guild, guildData);
-
-                channel.createEmbed(ChatUtil.info(author, guildData.getLeveling().getRoleMap().values().stream()
-                        .sorted(Comparator.comparingInt(LevelRole::getLevel))
-                        .map(i -> "Level " + (i.getLevel() + 1) + ": " + guildData.getLeveling().getRolesForLevel(i.getLevel()).stream()
-                                .map(Role::getName)
-                                .collect(Collectors.joining(", ")))
-                        .collect(Collectors.joining("\n")))).block();
-            }
-            // Sync the user's level-based roles
-            else if (args[0].equalsIgnoreCase("sync"))
-            {
-                GuildData guildData = bot.getOrAddGuildData(guild);
-                tryRolesNotEmpty(guild, guildData);
-
-                guildData.getLeveling().syncRoles(author);
-
-                channel.createEmbed(ChatUtil.success(author, "Synced level-based roles in **" + guild.getName() + "**.")).block();
-            }
-            // Set the max level
-            else if (args[0].equalsIgnoreCase("max"))
-            {
-                tryEditPerms(channel, author);
-
-                if (args.length < 2)
-                {
-                    GuildData guildData = bot.getOrAddGuildData(guild);
-                    channel.createEmbed(ChatUtil.info(author, "The current max level is **" + guildData.getLeveling().getMaxLevel() + "**.")).block();
-                }
-                else
-                {
-                    int max = CommandUtil.tryIntMin(args[1], "max level", 1);
-
-                    GuildData guildData = bot.getOrAddGuildData(guild);
-                    guildData.getLeveling().setMaxLevel(max);
-                    guildData.markForSave();
-
-                    channel.createEmbed(ChatUtil.success(author, "Set maximum level to **" + max + "** in **" + guild.getName() + "**.")).block();
-                }
-            }
-            else
-                throw new InvalidUsageException(this, registry, "<addrole/removerole/list/sync/max>");
+            Subcommand subcommand = registry.findSubcommand(this, args[0]);
+            if (subcommand == null)
+                throw new InvalidUsageException(this, registry, registry.formatSubcommands(this));
+            subcommand.execute(message, alias, args, registry, bot);
         }
     }
 
-    private void tryEditPerms(TextChannel channel, User user) throws PermissionException
+    // Add a level-based role
+    private void addRole(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        User author = message.getAuthor().get();
+        TextChannel channel = message.getChannel().cast(TextChannel.class).block();
+        Guild guild = message.getGuild().block();
+
+        tryEditPerms(bot, channel, author);
+
+        if (args.length < 3)
+            throw new InvalidUsageException(this, registry, "addrole <role> <level>");
+
+        GuildData guildData = bot.getOrAddGuildData(guild);
+        Role role = CommandUtil.tryRole(guild, args[1]);
+        int level = CommandUtil.tryInt(args[2], "level", 1, guildData.getLeveling().getMaxLevel() + 1) - 1;
+
+        guildData.getLeveling().addRole(role, level);
+        bot.getReconcileManager().start(guildData);
+
+        channel.createEmbed(ChatUtil.success(author, "Added **" + role.getName() + "** to level **" + (level + 1) + "** in **" + guild.getName() + "**.")).block();
+    }
+
+    // Remove a level-based role
+    private void removeRole(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        User author = message.getAuthor().get();
+        TextChannel channel = message.getChannel().cast(TextChannel.class).block();
+        Guild guild = message.getGuild().block();
+
+        tryEditPerms(bot, channel, author);
+
+        if (args.length < 2)
+            throw new InvalidUsageException(this, registry, "removerole <role>");
+
+        GuildData guildData = bot.getOrAddGuildData(guild);
+        tryRolesNotEmpty(guild, guildData);
+        Role role = CommandUtil.tryRole(guild, args[1]);
+
+        if (!guildData.getLeveling().hasRole(role))
+            throw new CommandException("**" + role.getName() + "** is not set to any level.");
+
+        guildData.getLeveling().removeRole(role);
+        bot.getReconcileManager().start(guildData);
+
+        channel.createEmbed(ChatUtil.success(author, "Removed **" + role.getName() + "** from level-based roles in **" + guild.getName() + "**.")).block();
+    }
+
+    // List all level-based roles
+    private void list(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        User author = message.getAuthor().get();
+        TextChannel channel = message.getChannel().cast(TextChannel.class).block();
+        Guild guild = message.getGuild().block();
+
+        GuildData guildData = bot.getOrAddGuildData(guild);
+        tryRolesNotEmpty(guild, guildData);
+
+        Leveling leveling = guildData.getLeveling();
+        String list = Flux.fromIterable(leveling.getLevelIndex().keySet())
+                .concatMap(level -> leveling.getRolesForLevel(level)
+                        .map(Role::getName)
+                        .collect(Collectors.joining(", "))
+                        .map(names -> "Level " + (level + 1) + ": " + names))
+                .collect(Collectors.joining("\n"))
+                .block();
+        channel.createEmbed(ChatUtil.info(author, list)).block();
+    }
+
+    // Sync the user's level-based roles
+    private void sync(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        User author = message.getAuthor().get();
+        TextChannel channel = message.getChannel().cast(TextChannel.class).block();
+        Guild guild = message.getGuild().block();
+
+        GuildData guildData = bot.getOrAddGuildData(guild);
+        tryRolesNotEmpty(guild, guildData);
+
+        guildData.getLeveling().syncRoles(author);
+
+        channel.createEmbed(ChatUtil.success(author, "Synced level-based roles in **" + guild.getName() + "**.")).block();
+    }
+
+    // Set the max level
+    private void max(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
     {
-        if (!Util.hasPermissions(channel, user.getId(), PermissionSet.of(Permission.MANAGE_ROLES)))
+        User author = message.getAuthor().get();
+        TextChannel channel = message.getChannel().cast(TextChannel.class).block();
+        Guild guild = message.getGuild().block();
+
+        tryEditPerms(bot, channel, author);
+
+        if (args.length < 2)
+        {
+            GuildData guildData = bot.getOrAddGuildData(guild);
+            channel.createEmbed(ChatUtil.info(author, "The current max level is **" + guildData.getLeveling().getMaxLevel() + "**.")).block();
+        }
+        else
+        {
+            int max = CommandUtil.tryInt(args[1], "max level", 1, XpCurve.MAX_LEVEL);
+
+            GuildData guildData = bot.getOrAddGuildData(guild);
+            guildData.getLeveling().setMaxLevel(max);
+            bot.getReconcileManager().start(guildData);
+
+            channel.createEmbed(ChatUtil.success(author, "Set maximum level to **" + max + "** in **" + guild.getName() + "**.")).block();
+        }
+    }
+
+    // Set the XP curve
+    private void curve(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        User author = message.getAuthor().get();
+        TextChannel channel = message.getChannel().cast(TextChannel.class).block();
+        Guild guild = message.getGuild().block();
+
+        tryEditPerms(bot, channel, author);
+
+        GuildData guildData = bot.getOrAddGuildData(guild);
+        Leveling leveling = guildData.getLeveling();
+        if (args.length < 4)
+        {
+            channel.createEmbed(ChatUtil.info(author, "Each level takes **" + format(leveling.getXpBase()) + " + (level × "
+                    + format(leveling.getXpMultiplier()) + ")^" + format(leveling.getXpExponent()) + "** XP.")).block();
+        }
+        else
+        {
+            double base = CommandUtil.tryDouble(args[1], "base", 1, 1000000);
+            double multiplier = CommandUtil.tryDouble(args[2], "multiplier", 0, 1000000);
+            double exponent = CommandUtil.tryDouble(args[3], "exponent", 0, 3);
+            if (!XpCurve.fits(base, multiplier, exponent))
+                throw new CommandException("Invalid curve specified. No level up to " + XpCurve.MAX_LEVEL + " can take more than "
+                        + Util.comma(Integer.MAX_VALUE) + " XP.");
+
+            leveling.setXpCurve(base, multiplier, exponent);
+            bot.getReconcileManager().start(guildData);
+
+            channel.createEmbed(ChatUtil.success(author, "Set the XP curve to **" + format(base) + " + (level × "
+                    + format(multiplier) + ")^" + format(exponent) + "** in **" + guild.getName() + "**.")).block();
+        }
+    }
+
+    // Set the time between rewarded messages
+    private void cooldown(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        User author = message.getAuthor().get();
+        TextChannel channel = message.getChannel().cast(TextChannel.class).block();
+        Guild guild = message.getGuild().block();
+
+        tryEditPerms(bot, channel, author);
+
+        GuildData guildData = bot.getOrAddGuildData(guild);
+        if (args.length < 2)
+        {
+            channel.createEmbed(ChatUtil.info(author, "Messages are rewarded every **"
+                    + TimeUnit.MILLISECONDS.toSeconds(guildData.getLeveling().getMessageCooldown()) + "** second(s).")).block();
+        }
+        else
+        {
+            int seconds = CommandUtil.tryInt(args[1], "cooldown", 0, 86400);
+            guildData.getLeveling().setMessageCooldown(TimeUnit.SECONDS.toMillis(seconds));
+
+            channel.createEmbed(ChatUtil.success(author, "Set the message cooldown to **" + seconds + "** second(s) in **" + guild.getName() + "**.")).block();
+        }
+    }
+
+    // Bring everyone's level-based roles in line
+    private void reconcile(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        User author = message.getAuthor().get();
+        TextChannel channel = message.getChannel().cast(TextChannel.class).block();
+        Guild guild = message.getGuild().block();
+
+        tryEditPerms(bot, channel, author);
+
+        GuildData guildData = bot.getOrAddGuildData(guild);
+        ReconcileManager reconciles = bot.getReconcileManager();
+        if (args.length >= 2 && args[1].equalsIgnoreCase("cancel"))
+        {
+            if (!reconciles.cancel(guildData))
+                throw new CommandException("There is no reconcile running in **" + guild.getName() + "**.");
+            channel.createEmbed(ChatUtil.success(author, "Cancelled the reconcile in **" + guild.getName() + "**.")).block();
+        }
+        else if (args.length >= 2 && args[1].equalsIgnoreCase("status"))
+        {
+            ReconcileManager.Job job = reconciles.getJob(guildData);
+            if (job == null)
+                throw new CommandException("There is no reconcile in **" + guild.getName() + "**.");
+            channel.createEmbed(ChatUtil.info(author, "Reconcile is **" + job.getState().name().toLowerCase() + "**: "
+                    + Util.comma(job.getScanned()) + " scanned, " + Util.comma(job.getChanged()) + " changed, "
+                    + Util.comma(job.getPending()) + " pending, " + Util.comma(job.getFailed()) + " failed.")).block();
+        }
+        else
+        {
+            tryRolesNotEmpty(guild, guildData);
+            reconciles.start(guildData);
+            channel.createEmbed(ChatUtil.success(author, "Started reconciling level-based roles in **" + guild.getName() + "**.")).block();
+        }
+    }
+
+    private static String format(double d)
+    {
+        return d == (long) d ? Long.toString((long) d) : Double.toString(d);
+    }
+
+    private void tryEditPerms(Snubot bot, TextChannel channel, User user) throws PermissionException
+    {
+        if (!bot.getPermissionManager().hasPermissions(channel, user.getId(), PermissionSet.of(Permission.MANAGE_ROLES)))
             throw new PermissionException();
     }
 
@@ -146,6 +292,23 @@ public class LevelCommand implements Command
         return new String[]{"level"};
     }
 
+    @Override
+    public Map<String, Subcommand> getSubcommands()
+    {
+        return subcommandMap;
+    }
+
+    @Override
+    public int getWeight(String[] args)
+    {
+        // Reconciling edits roles across the whole guild
+        if (args.length > 0 && args[0].equalsIgnoreCase("reconcile"))
+            return 5;
+        if (args.length > 0 && args[0].equalsIgnoreCase("sync"))
+            return 2;
+        return 1;
+    }
+
     @Override
     public String getDescription()
     {
@@ -45,7 +45,6 @@ public class LogCommand implements Command
                 GuildData data = bot.getOrAddGuildData(guild);
 
                 data.getLogging().setChannel(logChannel);
-                data.markForSave();
 
                 channel.createEmbed(ChatUtil.success(author, "Set the log channel to **" + logChannel.getName() + "**.")).block();
             }
@@ -57,7 +56,6 @@ public class LogCommand implements Command
                 GuildData data = bot.getOrAddGuildData(guild);
 
                 data.getLogging().addIgnoredChannel(ignore);
-                data.markForSave();
 
                 channel.createEmbed(ChatUtil.success(author, "Added **" + ignore.getName() + "** to ignored channels.")).block();
             }
@@ -72,7 +70,6 @@ public class LogCommand implements Command
                     throw new CommandException("That channel is not being ignored.");
 
                 data.getLogging().removeIgnoredChannel(unignore);
-                data.markForSave();
 
                 channel.createEmbed(ChatUtil.success(author, "Added **" + unignore.getName() + "** from ignored channels.")).block();
             }
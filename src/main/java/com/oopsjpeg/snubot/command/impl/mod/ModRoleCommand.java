@@ -41,7 +41,6 @@ public class ModRoleCommand implements Command
 
             GuildData data = bot.getOrAddGuildData(guild);
             data.setModRole(role);
-            data.markForSave();
 
             channel.createEmbed(ChatUtil.success(author, "Set the moderator role to **" + role.getName() + "**.")).block();
         }
@@ -0,0 +1,79 @@
+package com.oopsjpeg.snubot.command.impl.mod;
+
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.command.Command;
+import com.oopsjpeg.snubot.command.CommandRegistry;
+import com.oopsjpeg.snubot.command.exception.CommandException;
+import com.oopsjpeg.snubot.command.exception.InvalidUsageException;
+import com.oopsjpeg.snubot.data.impl.GuildData;
+import com.oopsjpeg.snubot.util.ChatUtil;
+import discord4j.core.object.entity.Guild;
+import discord4j.core.object.entity.Message;
+import discord4j.core.object.entity.User;
+import discord4j.core.object.entity.channel.MessageChannel;
+import discord4j.rest.util.Permission;
+import discord4j.rest.util.PermissionSet;
+
+public class PrefixCommand implements Command
+{
+    private static final int MAX_LENGTH = 10;
+
+    @Override
+    public void execute(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        User author = message.getAuthor().get();
+        MessageChannel channel = message.getChannel().block();
+        Guild guild = message.getGuild().block();
+
+        // View the current prefix
+        if (args.length == 0)
+        {
+            String prefix = bot.getCommandManager().getPrefixMatcher().getPrefix(guild.getId().asLong());
+            channel.createEmbed(ChatUtil.info(author, "The current prefix is `" + prefix + "`.")).block();
+        }
+        // Go back to the default prefix
+        else if (args[0].equalsIgnoreCase("reset"))
+        {
+            GuildData data = bot.getOrAddGuildData(guild);
+            data.setPrefix(null);
+
+            channel.createEmbed(ChatUtil.success(author, "Reset the prefix to `" + registry.getPrefix() + "`.")).block();
+        }
+        // Set the prefix
+        else
+        {
+            String prefix = args[0];
+            if (args.length > 1 || prefix.isEmpty() || prefix.length() > MAX_LENGTH || prefix.chars().anyMatch(Character::isWhitespace))
+                throw new InvalidUsageException(this, registry, "<prefix/reset> (up to " + MAX_LENGTH + " characters, no spaces)");
+
+            GuildData data = bot.getOrAddGuildData(guild);
+            data.setPrefix(prefix);
+
+            channel.createEmbed(ChatUtil.success(author, "Set the prefix to `" + data.getPrefix() + "`.")).block();
+        }
+    }
+
+    @Override
+    public String[] getAliases()
+    {
+        return new String[]{"prefix"};
+    }
+
+    @Override
+    public String getDescription()
+    {
+        return "Set the command prefix in the current server.";
+    }
+
+    @Override
+    public PermissionSet getPermissions()
+    {
+        return PermissionSet.of(Permission.ADMINISTRATOR);
+    }
+
+    @Override
+    public boolean isGuildOnly()
+    {
+        return true;
+    }
+}
@@ -1,6 +1,7 @@
 package com.oopsjpeg.snubot.command.impl.mod;
 
 import com.oopsjpeg.snubot.command.Command;
+import com.oopsjpeg.snubot.command.Subcommand;
 import com.oopsjpeg.snubot.util.ChatUtil;
 import com.oopsjpeg.snubot.command.CommandRegistry;
 import com.oopsjpeg.snubot.command.CommandUtil;
@@ -26,17 +27,28 @@ import discord4j.rest.util.Permission;
 import discord4j.rest.util.PermissionSet;
 import reactor.core.publisher.Mono;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class ReactIonRolesCommand implements Command
 {
+    private final Map<String, Subcommand> subcommandMap = new LinkedHashMap<>();
+
+    public ReactIonRolesCommand()
+    {
+        subcommandMap.put("select", this::select);
+        subcommandMap.put("add", this::add);
+        subcommandMap.put("remove", this::remove);
+        subcommandMap.put("clear", this::clear);
+    }
+
     @Override
     public void execute(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
     {
         MessageChannel channel = message.getChannel().block();
         User author = message.getAuthor().get();
         UserData data = bot.getOrAddUserData(author.getId().asString());
-        Guild guild = message.getGuild().block();
         ReactManager manager = bot.getReactManager();
 
         // Show information about selected message
@@ -55,75 +67,104 @@ public class ReactIonRolesCommand implements Command
         // Perform a reaction roles command
         else
         {
-            // Select a message to edit reaction-based roles on
-            if (args[0].equalsIgnoreCase("select"))
-            {
-                if (args.length < 3)
-                    throw new InvalidUsageException(this, registry, "select <channel> <message id>");
+            Subcommand subcommand = registry.findSubcommand(this, args[0]);
+            if (subcommand == null)
+                throw new InvalidUsageException(this, registry, registry.formatSubcommands(this));
+            subcommand.execute(message, alias, args, registry, bot);
+        }
+    }
 
-                TextChannel selectedChannel = CommandUtil.tryChannel(guild, args[1]);
-                Message selectedMessage = tryMessage(selectedChannel, args[2]);
+    // Select a message to edit reaction-based roles on
+    private void select(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        MessageChannel channel = message.getChannel().block();
+        User author = message.getAuthor().get();
+        UserData data = bot.getOrAddUserData(author.getId().asString());
+        Guild guild = message.getGuild().block();
 
-                data.getSelections().setMessage(selectedMessage);
-                data.markForSave();
+        if (args.length < 3)
+            throw new InvalidUsageException(this, registry, "select <channel> <message id>");
 
-                channel.createEmbed(ChatUtil.success(author, "Selected [specified message](" + data.getSelections().getMessageUrl() + ") by " + ChatUtil.formatUser(selectedMessage.getAuthor().get()) + " in " + selectedChannel.getMention() + ".")).block();
-            }
-            // Add a reaction-based role
-            else if (args[0].equalsIgnoreCase("add"))
-            {
-                if (args.length < 3)
-                    throw new InvalidUsageException(this, registry, "add <role> <emoji> [mode]");
-
-                Message selectedMessage = trySelectedMessage(data.getSelections(), registry, bot.getGateway()).block();
-                Role role = CommandUtil.tryRole(guild, args[1]);
-                ReactionEmoji emoji = Util.stringToEmoji(args[2]);
-
-                // Test if the emoji is real by reacting
-                AtomicBoolean sentReaction = new AtomicBoolean(true);
-                message.addReaction(emoji)
-                        .doOnError(e -> sentReaction.set(false))
-                        .onErrorResume(e -> Mono.empty())
-                        .block();
-                if (!sentReaction.get())
-                    throw new CommandException("Invalid emoji specified.");
-
-                ReactRole.Type type = args.length >= 4 ? ReactRole.Type.fromName(args[3]) : ReactRole.Type.TOGGLE;
-                if (type == null)
-                    throw new CommandException("Invalid role type specified.");
-
-                ReactMessage reactMessage = manager.getOrAdd(selectedMessage);
-                manager.addRoleToEmoji(reactMessage, emoji, role, type);
-                reactMessage.markForSave();
-
-                channel.createEmbed(ChatUtil.success(author, "Added **" + role.getName() + "** (" + type.getName() + ") to " + Util.emojiToString(emoji) + " on [selected message](" + data.getSelections().getMessageUrl() + ").")).block();
-            }
-            // Remove a reaction-based role
-            else if (args[0].equalsIgnoreCase("remove"))
-            {
-                if (args.length < 2)
-                    throw new InvalidUsageException(this, registry, "remove <role>");
+        TextChannel selectedChannel = CommandUtil.tryChannel(guild, args[1]);
+        Message selectedMessage = tryMessage(selectedChannel, args[2]);
 
-                Message selectedMessage = trySelectedMessage(data.getSelections(), registry, bot.getGateway()).block();
-                ReactMessage reactMessage = tryReactMessage(manager, selectedMessage);
-                Role role = CommandUtil.tryRole(guild, args[1]);
+        data.getSelections().setMessage(selectedMessage);
+        data.markForSave();
 
-                manager.removeRole(reactMessage, role);
-                reactMessage.markForSave();
+        channel.createEmbed(ChatUtil.success(author, "Selected [specified message](" + data.getSelections().getMessageUrl() + ") by " + ChatUtil.formatUser(selectedMessage.getAuthor().get()) + " in " + selectedChannel.getMention() + ".")).block();
+    }
 
-                channel.createEmbed(ChatUtil.success(author, "Removed **" + role.getName() + "** from all emojis on [selected message](" + data.getSelections().getMessageUrl() + ").")).block();
-            }
-            // Clear all reaction-based roles
-            else if (args[0].equalsIgnoreCase("clear"))
-            {
-                Message selectedMessage = trySelectedMessage(data.getSelections(), registry, bot.getGateway()).block();
+    // Add a reaction-based role
+    private void add(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        MessageChannel channel = message.getChannel().block();
+        User author = message.getAuthor().get();
+        UserData data = bot.getOrAddUserData(author.getId().asString());
+        Guild guild = message.getGuild().block();
+        ReactManager manager = bot.getReactManager();
 
-                manager.remove(selectedMessage);
+        if (args.length < 3)
+            throw new InvalidUsageException(this, registry, "add <role> <emoji> [mode]");
 
-                channel.createEmbed(ChatUtil.success(author, "Removed all reaction-based roles from [selected message](" + data.getSelections().getMessageUrl() + ").")).block();
-            }
-            else throw new InvalidUsageException(this, registry, "<select/add/remove/clear>");
-        }
+        Message selectedMessage = trySelectedMessage(data.getSelections(), registry, bot.getGateway()).block();
+        Role role = CommandUtil.tryRole(guild, args[1]);
+        ReactionEmoji emoji = Util.stringToEmoji(args[2]);
+
+        // Test if the emoji is real by reacting
+        AtomicBoolean sentReaction = new AtomicBoolean(true);
+        message.addReaction(emoji)
+                .doOnError(e -> sentReaction.set(false))
+                .onErrorResume(e -> Mono.empty())
+                .block();
+        if (!sentReaction.get())
+            throw new CommandException("Invalid emoji specified.");
+
+        ReactRole.Type type = args.length >= 4 ? ReactRole.Type.fromName(args[3]) : ReactRole.Type.TOGGLE;
+        if (type == null)
+            throw new CommandException("Invalid role type specified.");
+
+        ReactMessage reactMessage = manager.getOrAdd(selectedMessage);
+        manager.addRoleToEmoji(reactMessage, emoji, role, type);
+        reactMessage.markForSave();
+
+        channel.createEmbed(ChatUtil.success(author, "Added **" + role.getName() + "** (" + type.getName() + ") to " + Util.emojiToString(emoji) + " on [selected message](" + data.getSelections().getMessageUrl() + ").")).block();
+    }
+
+    // Remove a reaction-based role
+    private void remove(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        MessageChannel channel = message.getChannel().block();
+        User author = message.getAuthor().get();
+        UserData data = bot.getOrAddUserData(author.getId().asString());
+        Guild guild = message.getGuild().block();
+        ReactManager manager = bot.getReactManager();
+
+        if (args.length < 2)
+            throw new InvalidUsageException(this, registry, "remove <role>");
+
+        Message selectedMessage = trySelectedMessage(data.getSelections(), registry, bot.getGateway()).block();
+        ReactMessage reactMessage = tryReactMessage(manager, selectedMessage);
+        Role role = CommandUtil.tryRole(guild, args[1]);
+
+        manager.removeRole(reactMessage, role);
+        reactMessage.markForSave();
+
+        channel.createEmbed(ChatUtil.success(author, "Removed **" + role.getName() + "** from all emojis on [selected message](" + data.getSelections().getMessageUrl() + ").")).block();
+    }
+
+    // Clear all reaction-based roles
+    private void clear(Message message, String alias, String[] args, CommandRegistry registry, Snubot bot) throws CommandException
+    {
+        MessageChannel channel = message.getChannel().block();
+        User author = message.getAuthor().get();
+        UserData data = bot.getOrAddUserData(author.getId().asString());
+        ReactManager manager = bot.getReactManager();
+
+        Message selectedMessage = trySelectedMessage(data.getSelections(), registry, bot.getGateway()).block();
+
+        manager.remove(selectedMessage);
+
+        channel.createEmbed(ChatUtil.success(author, "Removed all reaction-based roles from [selected message](" + data.getSelections().getMessageUrl() + ").")).block();
     }
 
     private Mono<Message> trySelectedMessage(Selections s, CommandRegistry r, GatewayDiscordClient gateway) throws CommandException
@@ -154,6 +195,23 @@ public class ReactIonRolesCommand implements Command
         return new String[]{"rr", "reactionroles"};
     }
 
+    @Override
+    public Map<String, Subcommand> getSubcommands()
+    {
+        return subcommandMap;
+    }
+
+    @Override
+    public int getWeight(String[] args)
+    {
+        // Adding tests the emoji with a reaction, and selecting fetches the message
+        if (args.length > 0 && args[0].equalsIgnoreCase("add"))
+            return 3;
+        if (args.length > 0 && args[0].equalsIgnoreCase("select"))
+            return 2;
+        return 1;
+    }
+
     @Override
     public String getDescription()
     {
@@ -0,0 +1,142 @@
+package com.oopsjpeg.snubot.data;
+
+import java.util.*;
+
+public class Changes
+{
+    private final SaveData owner;
+    private Map<String, Object> setMap;
+    private Map<String, Number> incMap;
+    private Set<String> unsetSet;
+
+    public Changes()
+    {
+        this(null);
+    }
+
+    public Changes(SaveData owner)
+    {
+        this.owner = owner;
+    }
+
+    private static boolean isWithin(String path, String parent)
+    {
+        return path.startsWith(parent + ".");
+    }
+
+    private static Number normalize(Number n)
+    {
+        return n instanceof Integer || n instanceof Long ? n : (Number) n.doubleValue();
+    }
+
+    private static Number add(Number a, Number b)
+    {
+        if (a instanceof Integer && b instanceof Integer)
+            return a.intValue() + b.intValue();
+        if ((a instanceof Integer || a instanceof Long) && (b instanceof Integer || b instanceof Long))
+            return a.longValue() + b.longValue();
+        return a.doubleValue() + b.doubleValue();
+    }
+
+    public synchronized void set(String path, Object value)
+    {
+        // An already set parent holds this value by reference
+        if (setMap != null && setMap.keySet().stream().anyMatch(p -> isWithin(path, p)))
+            return;
+        // Mongo rejects updates that touch a path and its children at once
+        if (setMap != null)
+            setMap.keySet().removeIf(p -> isWithin(p, path));
+        if (incMap != null)
+            incMap.keySet().removeIf(p -> p.equals(path) || isWithin(p, path));
+        if (unsetSet != null)
+            unsetSet.removeIf(p -> p.equals(path) || isWithin(p, path));
+        setMap().put(path, value);
+        touch();
+    }
+
+    public synchronized void inc(String path, Number amount)
+    {
+        if (setMap != null && setMap.get(path) instanceof Number)
+            setMap.put(path, add((Number) setMap.get(path), amount));
+        else
+            incMap().merge(path, normalize(amount), Changes::add);
+        touch();
+    }
+
+    public synchronized void unset(String path)
+    {
+        if (setMap != null)
+            setMap.remove(path);
+        if (incMap != null)
+            incMap.remove(path);
+        unsetSet().add(path);
+        touch();
+    }
+
+    public void touch()
+    {
+        // Let the journal pick up the owner on its next commit
+        if (owner != null)
+            owner.touch();
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return (setMap == null || setMap.isEmpty()) && (incMap == null || incMap.isEmpty()) && (unsetSet == null || unsetSet.isEmpty());
+    }
+
+    public synchronized void clear()
+    {
+        setMap = null;
+        incMap = null;
+        unsetSet = null;
+    }
+
+    public synchronized Changes drain()
+    {
+        // Hand the collections over rather than copying them
+        Changes drained = new Changes();
+        drained.setMap = setMap;
+        drained.incMap = incMap;
+        drained.unsetSet = unsetSet;
+        clear();
+        return drained;
+    }
+
+    // Most data never changes between saves, so the collections only exist while there's something in them
+    private Map<String, Object> setMap()
+    {
+        if (setMap == null)
+            setMap = new LinkedHashMap<>();
+        return setMap;
+    }
+
+    private Map<String, Number> incMap()
+    {
+        if (incMap == null)
+            incMap = new LinkedHashMap<>();
+        return incMap;
+    }
+
+    private Set<String> unsetSet()
+    {
+        if (unsetSet == null)
+            unsetSet = new LinkedHashSet<>();
+        return unsetSet;
+    }
+
+    public Map<String, Object> getSetMap()
+    {
+        return setMap != null ? setMap : Collections.emptyMap();
+    }
+
+    public Map<String, Number> getIncMap()
+    {
+        return incMap != null ? incMap : Collections.emptyMap();
+    }
+
+    public Set<String> getUnsetSet()
+    {
+        return unsetSet != null ? unsetSet : Collections.emptySet();
+    }
+}
@@ -0,0 +1,239 @@
+package com.oopsjpeg.snubot.data;
+
+import com.oopsjpeg.snubot.Snubot;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+public class DataCache<T extends DiscordData>
+{
+    private final String name;
+    private final Function<String, T> loader;
+    private final Consumer<T> attacher;
+    private final Predicate<T> dirty;
+    private final Predicate<T> flusher;
+    private final ToIntFunction<T> weigher;
+    private final long maxWeight;
+
+    // Reads only stamp the entry, so the hot path never takes a lock and eviction works out the order itself
+    private final Map<String, Entry<T>> map = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<T>> loadMap = new ConcurrentHashMap<>();
+    // Entries someone is holding on to, which can't be evicted without their changes going missing
+    private final Map<String, Integer> pinMap = new ConcurrentHashMap<>();
+    private volatile long epoch;
+
+    public DataCache(String name, Function<String, T> loader, Consumer<T> attacher, Predicate<T> dirty, Predicate<T> flusher, ToIntFunction<T> weigher, long maxWeight)
+    {
+        this.name = name;
+        this.loader = loader;
+        this.attacher = attacher;
+        this.dirty = dirty;
+        this.flusher = flusher;
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+    }
+
+    public T get(String id)
+    {
+        return get(id, null);
+    }
+
+    public T get(String id, Function<String, T> creator)
+    {
+        T data = getIfPresent(id);
+        if (data != null)
+            return data;
+
+        // Share one load between everyone asking for the same ID
+        CompletableFuture<T> future = new CompletableFuture<>();
+        CompletableFuture<T> existing = loadMap.putIfAbsent(id, future);
+        if (existing != null)
+            data = existing.join();
+        else
+        {
+            try
+            {
+                data = getIfPresent(id);
+                if (data == null)
+                    data = loader.apply(id);
+                if (data == null && creator != null)
+                    data = creator.apply(id);
+                if (data != null)
+                    data = putIfAbsent(id, data);
+                future.complete(data);
+            }
+            catch (RuntimeException error)
+            {
+                future.completeExceptionally(error);
+                throw error;
+            }
+            finally
+            {
+                loadMap.remove(id);
+            }
+        }
+
+        // Joined a plain load that found nothing
+        if (data == null && creator != null)
+            data = putIfAbsent(id, creator.apply(id));
+        return data;
+    }
+
+    public T getIfPresent(String id)
+    {
+        Entry<T> entry = map.get(id);
+        if (entry == null)
+            return null;
+        // Only written when it changes, so hot entries don't keep bouncing their cache line around
+        long epoch = this.epoch;
+        if (entry.epoch != epoch)
+            entry.epoch = epoch;
+        return entry.data;
+    }
+
+    // Pins go through the entry's own bin, so an eviction either sees the pin or has already finished
+    public void pin(String id)
+    {
+        map.compute(id, (k, entry) ->
+        {
+            pinMap.merge(k, 1, Integer::sum);
+            return entry;
+        });
+    }
+
+    public void unpin(String id)
+    {
+        pinMap.computeIfPresent(id, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    public boolean isPinned(String id)
+    {
+        return pinMap.containsKey(id);
+    }
+
+    public T put(String id, T data)
+    {
+        // Whatever's cached is handed what it needs to reach the journal and managers, however it got here
+        attacher.accept(data);
+        map.put(id, new Entry<>(data, epoch));
+        return data;
+    }
+
+    public T putIfAbsent(String id, T data)
+    {
+        attacher.accept(data);
+        Entry<T> result = map.putIfAbsent(id, new Entry<>(data, epoch));
+        return result != null ? result.data : data;
+    }
+
+    public T remove(String id)
+    {
+        Entry<T> entry = map.remove(id);
+        return entry != null ? entry.data : null;
+    }
+
+    public boolean contains(String id)
+    {
+        return map.containsKey(id);
+    }
+
+    public List<T> values()
+    {
+        List<T> list = new ArrayList<>(map.size());
+        for (Entry<T> entry : map.values())
+            list.add(entry.data);
+        return list;
+    }
+
+    public int size()
+    {
+        return map.size();
+    }
+
+    // Weighing walks the whole cache, so this runs on a schedule rather than on every put
+    public synchronized void evict()
+    {
+        // Anything read since the last run is still in use and stays for another round
+        long last = epoch++;
+
+        // Stamps keep moving while this runs, so they're copied before sorting
+        List<Candidate<T>> candidateList = new ArrayList<>(map.size());
+        long weight = 0;
+        for (Entry<T> entry : map.values())
+        {
+            candidateList.add(new Candidate<>(entry));
+            weight += weigher.applyAsInt(entry.data);
+        }
+        if (weight <= maxWeight)
+            return;
+        candidateList.sort(Comparator.comparingLong(c -> c.epoch));
+
+        List<Entry<T>> flushList = new ArrayList<>();
+        int evicted = 0;
+        for (Candidate<T> candidate : candidateList)
+        {
+            if (weight <= maxWeight || candidate.epoch >= last)
+                break;
+            Entry<T> entry = candidate.entry;
+            if (isPinned(entry.data.getId()))
+                continue;
+            // Dirty entries have to be flushed before they can go
+            if (dirty.test(entry.data))
+                flushList.add(entry);
+            else if (tryEvict(entry))
+                evicted++;
+            weight -= weigher.applyAsInt(entry.data);
+        }
+
+        // Then evict whatever wasn't changed again in the meantime
+        for (Entry<T> entry : flushList)
+            if (flusher.test(entry.data) && tryEvict(entry))
+                evicted++;
+
+        if (evicted > 0)
+            Snubot.LOGGER.info("Evicted " + evicted + " " + name + " from cache.");
+    }
+
+    private boolean tryEvict(Entry<T> entry)
+    {
+        // Checked under the entry's bin, the same one pins take
+        boolean[] evicted = new boolean[1];
+        map.computeIfPresent(entry.data.getId(), (k, current) ->
+        {
+            if (current != entry || pinMap.containsKey(k) || dirty.test(current.data))
+                return current;
+            evicted[0] = true;
+            return null;
+        });
+        return evicted[0];
+    }
+
+    private static class Entry<T>
+    {
+        private final T data;
+        private volatile long epoch;
+
+        private Entry(T data, long epoch)
+        {
+            this.data = data;
+            this.epoch = epoch;
+        }
+    }
+
+    private static class Candidate<T>
+    {
+        private final Entry<T> entry;
+        private final long epoch;
+
+        private Candidate(Entry<T> entry)
+        {
+            this.entry = entry;
+            epoch = entry.epoch;
+        }
+    }
+}
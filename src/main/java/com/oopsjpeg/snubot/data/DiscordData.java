@@ -1,21 +1,28 @@
 package com.oopsjpeg.snubot.data;
 
-import com.google.gson.annotations.SerializedName;
 import discord4j.common.util.Snowflake;
 
-import java.util.Objects;
-
 public abstract class DiscordData
 {
-    @SerializedName("_id")
-    private final String id;
+    // Kept as a long in memory, but read and written as a string
+    private final long id;
 
     public DiscordData(final String id)
+    {
+        this(Long.parseLong(id));
+    }
+
+    public DiscordData(final long id)
     {
         this.id = id;
     }
 
     public String getId()
+    {
+        return Long.toString(id);
+    }
+
+    public long getIdAsLong()
     {
         return id;
     }
@@ -28,12 +35,12 @@ public abstract class DiscordData
     @Override
     public boolean equals(Object o)
     {
-        return o instanceof DiscordData && Objects.equals(id, ((DiscordData) o).id);
+        return o instanceof DiscordData && id == ((DiscordData) o).id;
     }
 
     @Override
     public int hashCode()
     {
-        return Objects.hash(id);
+        return Long.hashCode(id);
     }
 }
@@ -4,10 +4,26 @@ public interface SaveData
 {
     default void markForSave()
     {
-        setMarkedForSave(true);
+        getSaveMarker().mark();
+        getChanges().touch();
     }
 
-    boolean isMarkedForSave();
+    // Hands this to the journal once it's attached to something that has one
+    default void touch()
+    {
+    }
+
+    default boolean isMarkedForSave()
+    {
+        return getSaveMarker().isMarked();
+    }
+
+    default boolean hasChanges()
+    {
+        return isMarkedForSave() || !getChanges().isEmpty();
+    }
+
+    SaveMarker getSaveMarker();
 
-    void setMarkedForSave(boolean markedForSave);
+    Changes getChanges();
 }
@@ -0,0 +1,29 @@
+package com.oopsjpeg.snubot.data;
+
+public class SaveMarker
+{
+    private volatile long version;
+    private volatile long savedVersion;
+
+    public synchronized void mark()
+    {
+        version++;
+    }
+
+    public boolean isMarked()
+    {
+        return version != savedVersion;
+    }
+
+    public long getVersion()
+    {
+        return version;
+    }
+
+    public synchronized void saved(long version)
+    {
+        // Only clears if nothing was marked since the saved version was taken
+        if (version > savedVersion)
+            savedVersion = version;
+    }
+}
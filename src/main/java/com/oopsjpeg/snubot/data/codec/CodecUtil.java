@@ -0,0 +1,120 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.util.LongSet;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.EncoderContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class CodecUtil
+{
+    @SuppressWarnings("unchecked")
+    public static <T> BsonDocument toDocument(T value)
+    {
+        BsonDocument document = new BsonDocument();
+        SnubotCodecProvider.REGISTRY.get((Class<T>) value.getClass())
+                .encode(new BsonDocumentWriter(document), value, EncoderContext.builder().build());
+        return document;
+    }
+
+    public static void writeUpdatedAt(BsonWriter writer)
+    {
+        // Documents are encoded when they're written, so this is when they were last saved
+        writer.writeDateTime("updatedAt", System.currentTimeMillis());
+    }
+
+    public static boolean readNull(BsonReader reader)
+    {
+        if (reader.getCurrentBsonType() == BsonType.NULL)
+        {
+            reader.readNull();
+            return true;
+        }
+        return false;
+    }
+
+    public static double readNumber(BsonReader reader)
+    {
+        // Counters may have been widened by $inc, so accept any numeric type
+        switch (reader.getCurrentBsonType())
+        {
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return reader.readInt64();
+            case DECIMAL128:
+                return reader.readDecimal128().doubleValue();
+            default:
+                return reader.readDouble();
+        }
+    }
+
+    public static long readLong(BsonReader reader)
+    {
+        // Like readNumber, but whole numbers stay exact, since IDs are past what a double holds
+        switch (reader.getCurrentBsonType())
+        {
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return reader.readInt64();
+            case DECIMAL128:
+                return reader.readDecimal128().bigDecimalValue().longValue();
+            default:
+                return (long) reader.readDouble();
+        }
+    }
+
+    public static List<String> readStringList(BsonReader reader)
+    {
+        List<String> list = new ArrayList<>();
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+            list.add(reader.readString());
+        reader.readEndArray();
+        return list;
+    }
+
+    public static LongSet readLongSet(BsonReader reader)
+    {
+        // IDs are stored as strings, same as they always were
+        LongSet set = new LongSet();
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+            set.add(Long.parseLong(reader.readString()));
+        reader.readEndArray();
+        return set;
+    }
+
+    public static void writeString(BsonWriter writer, String name, String value)
+    {
+        if (value != null)
+            writer.writeString(name, value);
+    }
+
+    public static void writeStringList(BsonWriter writer, String name, Collection<String> values)
+    {
+        writer.writeStartArray(name);
+        values.forEach(writer::writeString);
+        writer.writeEndArray();
+    }
+
+    public static void writeLongSet(BsonWriter writer, LongSet values)
+    {
+        writer.writeStartArray();
+        values.forEach(v -> writer.writeString(Long.toString(v)));
+        writer.writeEndArray();
+    }
+
+    public static void writeLongSet(BsonWriter writer, String name, LongSet values)
+    {
+        writer.writeName(name);
+        writeLongSet(writer, values);
+    }
+}
@@ -0,0 +1,52 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.data.impl.Coloring;
+import com.oopsjpeg.snubot.util.LongSet;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+public class ColoringCodec implements Codec<Coloring>
+{
+    @Override
+    public void encode(BsonWriter writer, Coloring value, EncoderContext context)
+    {
+        writer.writeStartDocument();
+        CodecUtil.writeLongSet(writer, "roleIdSet", value.getRoleIdSet());
+        writer.writeInt32("levelRequired", value.getLevelRequired());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Coloring decode(BsonReader reader, DecoderContext context)
+    {
+        LongSet roleIdSet = new LongSet();
+        int levelRequired = 0;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String name = reader.readName();
+            if (name.equals("roleIdSet"))
+                roleIdSet = CodecUtil.readLongSet(reader);
+            else if (name.equals("levelRequired"))
+                levelRequired = (int) CodecUtil.readNumber(reader);
+            else
+                reader.skipValue();
+        }
+        reader.readEndDocument();
+
+        Coloring coloring = new Coloring(levelRequired);
+        roleIdSet.forEach(coloring.getRoleIdSet()::add);
+        return coloring;
+    }
+
+    @Override
+    public Class<Coloring> getEncoderClass()
+    {
+        return Coloring.class;
+    }
+}
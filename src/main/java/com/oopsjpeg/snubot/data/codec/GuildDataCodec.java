@@ -0,0 +1,121 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.data.impl.*;
+import com.oopsjpeg.snubot.data.store.MemberStore;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+
+public class GuildDataCodec implements Codec<GuildData>
+{
+    private final Codec<Leveling> levelingCodec;
+    private final Codec<Coloring> coloringCodec;
+    private final Codec<Logging> loggingCodec;
+    private final MemberDataCodec memberCodec;
+    private final LongFunction<MemberStore> storeOpener;
+
+    public GuildDataCodec(CodecRegistry registry, LongFunction<MemberStore> storeOpener)
+    {
+        levelingCodec = registry.get(Leveling.class);
+        coloringCodec = registry.get(Coloring.class);
+        loggingCodec = registry.get(Logging.class);
+        memberCodec = new MemberDataCodec(registry);
+        this.storeOpener = storeOpener;
+    }
+
+    @Override
+    public void encode(BsonWriter writer, GuildData value, EncoderContext context)
+    {
+        writer.writeStartDocument();
+        writer.writeString("_id", value.getId());
+        writer.writeName("leveling");
+        context.encodeWithChildContext(levelingCodec, writer, value.getLeveling());
+        writer.writeName("coloring");
+        context.encodeWithChildContext(coloringCodec, writer, value.getColoring());
+        writer.writeName("logging");
+        context.encodeWithChildContext(loggingCodec, writer, value.getLogging());
+        CodecUtil.writeString(writer, "modRoleId", value.getModRoleId());
+        CodecUtil.writeString(writer, "prefix", value.getPrefix());
+        CodecUtil.writeUpdatedAt(writer);
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public GuildData decode(BsonReader reader, DecoderContext context)
+    {
+        String id = null;
+        Leveling leveling = null;
+        Coloring coloring = null;
+        Logging logging = null;
+        String modRoleId = null;
+        String prefix = null;
+        List<MemberData> legacyMemberList = new ArrayList<>();
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String name = reader.readName();
+            if (CodecUtil.readNull(reader))
+                continue;
+            switch (name)
+            {
+                case "_id":
+                    id = reader.readString();
+                    break;
+                case "leveling":
+                    leveling = levelingCodec.decode(reader, context);
+                    break;
+                case "coloring":
+                    coloring = coloringCodec.decode(reader, context);
+                    break;
+                case "logging":
+                    logging = loggingCodec.decode(reader, context);
+                    break;
+                case "modRoleId":
+                    modRoleId = reader.readString();
+                    break;
+                case "prefix":
+                    prefix = reader.readString();
+                    break;
+                case "memberDataMap":
+                    // Members used to be embedded in the guild document
+                    reader.readStartDocument();
+                    while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+                    {
+                        reader.skipName();
+                        legacyMemberList.add(memberCodec.decode(reader, context, id));
+                    }
+                    reader.readEndDocument();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+
+        GuildData data = new GuildData(id, leveling, coloring, logging, modRoleId, prefix, storeOpener.apply(Long.parseLong(id)));
+        if (!legacyMemberList.isEmpty())
+        {
+            // Move them into the members collection and drop them from this document on the next save
+            Snubot.LOGGER.info("Migrating " + legacyMemberList.size() + " embedded member(s) of guild ID " + id + ".");
+            legacyMemberList.forEach(m -> data.putMemberData(m).markForSave());
+            data.markForSave();
+        }
+        return data;
+    }
+
+    @Override
+    public Class<GuildData> getEncoderClass()
+    {
+        return GuildData.class;
+    }
+}
@@ -0,0 +1,49 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.data.impl.LevelRole;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+public class LevelRoleCodec implements Codec<LevelRole>
+{
+    @Override
+    public void encode(BsonWriter writer, LevelRole value, EncoderContext context)
+    {
+        writer.writeStartDocument();
+        writer.writeString("_id", value.getId());
+        writer.writeInt32("level", value.getLevel());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public LevelRole decode(BsonReader reader, DecoderContext context)
+    {
+        String id = null;
+        int level = 0;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String name = reader.readName();
+            if (name.equals("_id"))
+                id = reader.readString();
+            else if (name.equals("level"))
+                level = (int) CodecUtil.readNumber(reader);
+            else
+                reader.skipValue();
+        }
+        reader.readEndDocument();
+
+        return new LevelRole(id, level);
+    }
+
+    @Override
+    public Class<LevelRole> getEncoderClass()
+    {
+        return LevelRole.class;
+    }
+}
@@ -0,0 +1,102 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.data.impl.LevelRole;
+import com.oopsjpeg.snubot.data.impl.Leveling;
+import com.oopsjpeg.snubot.data.impl.XpCurve;
+import com.oopsjpeg.snubot.util.LongObjectMap;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+
+public class LevelingCodec implements Codec<Leveling>
+{
+    private final Codec<LevelRole> roleCodec;
+
+    public LevelingCodec(CodecRegistry registry)
+    {
+        roleCodec = registry.get(LevelRole.class);
+    }
+
+    @Override
+    public void encode(BsonWriter writer, Leveling value, EncoderContext context)
+    {
+        writer.writeStartDocument();
+        writer.writeStartDocument("roleMap");
+        value.getRoleMap().forEach((id, role) ->
+        {
+            writer.writeName(Long.toString(id));
+            context.encodeWithChildContext(roleCodec, writer, role);
+        });
+        writer.writeEndDocument();
+        writer.writeInt32("maxLevel", value.getMaxLevel());
+        writer.writeDouble("xpBase", value.getXpBase());
+        writer.writeDouble("xpMultiplier", value.getXpMultiplier());
+        writer.writeDouble("xpExponent", value.getXpExponent());
+        writer.writeInt64("messageCooldown", value.getMessageCooldown());
+        writer.writeInt64("reconcileCheckpoint", value.getReconcileCheckpoint());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Leveling decode(BsonReader reader, DecoderContext context)
+    {
+        LongObjectMap<LevelRole> roleMap = new LongObjectMap<>();
+        int maxLevel = 0;
+        double xpBase = XpCurve.DEFAULT_BASE;
+        double xpMultiplier = XpCurve.DEFAULT_MULTIPLIER;
+        double xpExponent = XpCurve.DEFAULT_EXPONENT;
+        long messageCooldown = Leveling.DEFAULT_MESSAGE_COOLDOWN;
+        long reconcileCheckpoint = -1;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String name = reader.readName();
+            if (name.equals("roleMap"))
+            {
+                reader.readStartDocument();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+                    roleMap.put(Long.parseLong(reader.readName()), roleCodec.decode(reader, context));
+                reader.readEndDocument();
+            }
+            else if (name.equals("maxLevel"))
+                maxLevel = (int) CodecUtil.readNumber(reader);
+            else if (name.equals("xpBase"))
+                xpBase = CodecUtil.readNumber(reader);
+            else if (name.equals("xpMultiplier"))
+                xpMultiplier = CodecUtil.readNumber(reader);
+            else if (name.equals("xpExponent"))
+                xpExponent = CodecUtil.readNumber(reader);
+            else if (name.equals("messageCooldown"))
+                messageCooldown = (long) CodecUtil.readNumber(reader);
+            else if (name.equals("reconcileCheckpoint"))
+                reconcileCheckpoint = CodecUtil.readLong(reader);
+            else
+                reader.skipValue();
+        }
+        reader.readEndDocument();
+
+        // Documents saved before the limits existed are brought back within them, instead of building huge or overflowing tables
+        maxLevel = Math.max(0, Math.min(maxLevel, XpCurve.MAX_LEVEL));
+        if (!XpCurve.fits(xpBase, xpMultiplier, xpExponent))
+        {
+            xpBase = XpCurve.DEFAULT_BASE;
+            xpMultiplier = XpCurve.DEFAULT_MULTIPLIER;
+            xpExponent = XpCurve.DEFAULT_EXPONENT;
+        }
+
+        Leveling leveling = new Leveling(maxLevel, xpBase, xpMultiplier, xpExponent, messageCooldown, reconcileCheckpoint);
+        leveling.getRoleMap().putAll(roleMap);
+        return leveling;
+    }
+
+    @Override
+    public Class<Leveling> getEncoderClass()
+    {
+        return Leveling.class;
+    }
+}
@@ -0,0 +1,74 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+import java.time.LocalDateTime;
+
+// Keeps the same {date, time} layout that was stored before codecs were used
+public class LocalDateTimeCodec implements Codec<LocalDateTime>
+{
+    @Override
+    public void encode(BsonWriter writer, LocalDateTime value, EncoderContext context)
+    {
+        writer.writeStartDocument();
+        writer.writeStartDocument("date");
+        writer.writeInt32("year", value.getYear());
+        writer.writeInt32("month", value.getMonthValue());
+        writer.writeInt32("day", value.getDayOfMonth());
+        writer.writeEndDocument();
+        writer.writeStartDocument("time");
+        writer.writeInt32("hour", value.getHour());
+        writer.writeInt32("minute", value.getMinute());
+        writer.writeInt32("second", value.getSecond());
+        writer.writeInt32("nano", value.getNano());
+        writer.writeEndDocument();
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public LocalDateTime decode(BsonReader reader, DecoderContext context)
+    {
+        int year = 0, month = 1, day = 1, hour = 0, minute = 0, second = 0, nano = 0;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String name = reader.readName();
+            if (name.equals("date") || name.equals("time"))
+            {
+                reader.readStartDocument();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+                {
+                    String field = reader.readName();
+                    int value = (int) CodecUtil.readNumber(reader);
+                    switch (field)
+                    {
+                        case "year": year = value; break;
+                        case "month": month = value; break;
+                        case "day": day = value; break;
+                        case "hour": hour = value; break;
+                        case "minute": minute = value; break;
+                        case "second": second = value; break;
+                        case "nano": nano = value; break;
+                    }
+                }
+                reader.readEndDocument();
+            }
+            else reader.skipValue();
+        }
+        reader.readEndDocument();
+
+        return LocalDateTime.of(year, month, day, hour, minute, second, nano);
+    }
+
+    @Override
+    public Class<LocalDateTime> getEncoderClass()
+    {
+        return LocalDateTime.class;
+    }
+}
@@ -0,0 +1,54 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.data.impl.Logging;
+import com.oopsjpeg.snubot.util.LongSet;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+public class LoggingCodec implements Codec<Logging>
+{
+    @Override
+    public void encode(BsonWriter writer, Logging value, EncoderContext context)
+    {
+        writer.writeStartDocument();
+        CodecUtil.writeLongSet(writer, "ignoredChannelIds", value.getIgnoredChannelIds());
+        CodecUtil.writeString(writer, "channelId", value.getChannelId());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Logging decode(BsonReader reader, DecoderContext context)
+    {
+        LongSet ignoredChannelIds = new LongSet();
+        String channelId = null;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String name = reader.readName();
+            if (CodecUtil.readNull(reader))
+                continue;
+            if (name.equals("ignoredChannelIds"))
+                ignoredChannelIds = CodecUtil.readLongSet(reader);
+            else if (name.equals("channelId"))
+                channelId = reader.readString();
+            else
+                reader.skipValue();
+        }
+        reader.readEndDocument();
+
+        Logging logging = new Logging(channelId);
+        ignoredChannelIds.forEach(logging.getIgnoredChannelIds()::add);
+        return logging;
+    }
+
+    @Override
+    public Class<Logging> getEncoderClass()
+    {
+        return Logging.class;
+    }
+}
@@ -0,0 +1,29 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.util.LongSet;
+import org.bson.BsonReader;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+public class LongSetCodec implements Codec<LongSet>
+{
+    @Override
+    public void encode(BsonWriter writer, LongSet value, EncoderContext context)
+    {
+        CodecUtil.writeLongSet(writer, value);
+    }
+
+    @Override
+    public LongSet decode(BsonReader reader, DecoderContext context)
+    {
+        return CodecUtil.readLongSet(reader);
+    }
+
+    @Override
+    public Class<LongSet> getEncoderClass()
+    {
+        return LongSet.class;
+    }
+}
@@ -0,0 +1,102 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.data.impl.MemberData;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import java.time.LocalDateTime;
+
+public class MemberDataCodec implements Codec<MemberData>
+{
+    private final Codec<LocalDateTime> timeCodec;
+
+    public MemberDataCodec(CodecRegistry registry)
+    {
+        timeCodec = registry.get(LocalDateTime.class);
+    }
+
+    @Override
+    public void encode(BsonWriter writer, MemberData value, EncoderContext context)
+    {
+        writer.writeStartDocument();
+        writer.writeString("guildId", value.getGuildId());
+        writer.writeString("memberId", value.getId());
+        writer.writeDouble("coins", value.getCoins());
+        writer.writeDouble("xp", value.getXp());
+        writer.writeInt32("level", value.getLevel());
+        if (value.getLastDailyTime() != null)
+        {
+            writer.writeName("lastDailyTime");
+            context.encodeWithChildContext(timeCodec, writer, value.getLastDailyTime());
+        }
+        CodecUtil.writeUpdatedAt(writer);
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public MemberData decode(BsonReader reader, DecoderContext context)
+    {
+        return decode(reader, context, null);
+    }
+
+    public MemberData decode(BsonReader reader, DecoderContext context, String guildId)
+    {
+        String memberId = null;
+        float coins = 0;
+        float xp = 0;
+        int level = 0;
+        LocalDateTime lastDailyTime = null;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String name = reader.readName();
+            if (CodecUtil.readNull(reader))
+                continue;
+            switch (name)
+            {
+                case "_id":
+                    // Members embedded in old guild documents used their member ID as the document ID
+                    if (reader.getCurrentBsonType() == BsonType.STRING)
+                        memberId = reader.readString();
+                    else
+                        reader.skipValue();
+                    break;
+                case "guildId":
+                    guildId = reader.readString();
+                    break;
+                case "memberId":
+                    memberId = reader.readString();
+                    break;
+                case "coins":
+                    coins = (float) CodecUtil.readNumber(reader);
+                    break;
+                case "xp":
+                    xp = (float) CodecUtil.readNumber(reader);
+                    break;
+                case "level":
+                    level = (int) CodecUtil.readNumber(reader);
+                    break;
+                case "lastDailyTime":
+                    lastDailyTime = timeCodec.decode(reader, context);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+
+        return new MemberData(memberId, guildId, coins, xp, level, lastDailyTime);
+    }
+
+    @Override
+    public Class<MemberData> getEncoderClass()
+    {
+        return MemberData.class;
+    }
+}
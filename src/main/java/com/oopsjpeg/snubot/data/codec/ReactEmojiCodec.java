@@ -0,0 +1,74 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.react.ReactEmoji;
+import com.oopsjpeg.snubot.react.ReactRole;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ReactEmojiCodec implements Codec<ReactEmoji>
+{
+    private final Codec<ReactRole> roleCodec;
+
+    public ReactEmojiCodec(CodecRegistry registry)
+    {
+        roleCodec = registry.get(ReactRole.class);
+    }
+
+    @Override
+    public void encode(BsonWriter writer, ReactEmoji value, EncoderContext context)
+    {
+        writer.writeStartDocument();
+        writer.writeString("text", value.getText());
+        writer.writeStartDocument("roleMap");
+        value.getRoleMap().forEach((id, role) ->
+        {
+            writer.writeName(id);
+            context.encodeWithChildContext(roleCodec, writer, role);
+        });
+        writer.writeEndDocument();
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public ReactEmoji decode(BsonReader reader, DecoderContext context)
+    {
+        String text = null;
+        Map<String, ReactRole> roleMap = new HashMap<>();
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String name = reader.readName();
+            if (name.equals("text"))
+                text = reader.readString();
+            else if (name.equals("roleMap"))
+            {
+                reader.readStartDocument();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+                    roleMap.put(reader.readName(), roleCodec.decode(reader, context));
+                reader.readEndDocument();
+            }
+            else
+                reader.skipValue();
+        }
+        reader.readEndDocument();
+
+        ReactEmoji emoji = new ReactEmoji(text);
+        emoji.getRoleMap().putAll(roleMap);
+        return emoji;
+    }
+
+    @Override
+    public Class<ReactEmoji> getEncoderClass()
+    {
+        return ReactEmoji.class;
+    }
+}
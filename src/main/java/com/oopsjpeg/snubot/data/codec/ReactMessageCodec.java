@@ -0,0 +1,78 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.react.ReactEmoji;
+import com.oopsjpeg.snubot.react.ReactMessage;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class ReactMessageCodec implements Codec<ReactMessage>
+{
+    private final Codec<ReactEmoji> emojiCodec;
+
+    public ReactMessageCodec(CodecRegistry registry)
+    {
+        emojiCodec = registry.get(ReactEmoji.class);
+    }
+
+    @Override
+    public void encode(BsonWriter writer, ReactMessage value, EncoderContext context)
+    {
+        writer.writeStartDocument();
+        writer.writeString("_id", value.getId());
+        writer.writeString("channelId", value.getChannelId());
+        writer.writeStartDocument("emojiMap");
+        value.getEmojiMap().forEach((text, emoji) ->
+        {
+            writer.writeName(text);
+            context.encodeWithChildContext(emojiCodec, writer, emoji);
+        });
+        writer.writeEndDocument();
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public ReactMessage decode(BsonReader reader, DecoderContext context)
+    {
+        String id = null;
+        String channelId = null;
+        Map<String, ReactEmoji> emojiMap = new HashMap<>();
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String name = reader.readName();
+            if (name.equals("_id"))
+                id = reader.readString();
+            else if (name.equals("channelId"))
+                channelId = reader.readString();
+            else if (name.equals("emojiMap"))
+            {
+                reader.readStartDocument();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+                    emojiMap.put(reader.readName(), emojiCodec.decode(reader, context));
+                reader.readEndDocument();
+            }
+            else
+                reader.skipValue();
+        }
+        reader.readEndDocument();
+
+        ReactMessage message = new ReactMessage(id, channelId);
+        message.getEmojiMap().putAll(emojiMap);
+        return message;
+    }
+
+    @Override
+    public Class<ReactMessage> getEncoderClass()
+    {
+        return ReactMessage.class;
+    }
+}
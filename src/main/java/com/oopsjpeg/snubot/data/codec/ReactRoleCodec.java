@@ -0,0 +1,49 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.react.ReactRole;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+public class ReactRoleCodec implements Codec<ReactRole>
+{
+    @Override
+    public void encode(BsonWriter writer, ReactRole value, EncoderContext context)
+    {
+        writer.writeStartDocument();
+        writer.writeString("_id", value.getId());
+        writer.writeString("type", value.getType().name());
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public ReactRole decode(BsonReader reader, DecoderContext context)
+    {
+        String id = null;
+        ReactRole.Type type = ReactRole.Type.TOGGLE;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String name = reader.readName();
+            if (name.equals("_id"))
+                id = reader.readString();
+            else if (name.equals("type"))
+                type = ReactRole.Type.valueOf(reader.readString());
+            else
+                reader.skipValue();
+        }
+        reader.readEndDocument();
+
+        return new ReactRole(id, type);
+    }
+
+    @Override
+    public Class<ReactRole> getEncoderClass()
+    {
+        return ReactRole.class;
+    }
+}
@@ -0,0 +1,68 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.mongodb.MongoClient;
+import com.oopsjpeg.snubot.data.impl.*;
+import com.oopsjpeg.snubot.data.store.HeapMemberStore;
+import com.oopsjpeg.snubot.data.store.MemberStore;
+import com.oopsjpeg.snubot.react.ReactEmoji;
+import com.oopsjpeg.snubot.react.ReactMessage;
+import com.oopsjpeg.snubot.react.ReactRole;
+import com.oopsjpeg.snubot.util.LongSet;
+import org.bson.codecs.Codec;
+import org.bson.codecs.configuration.CodecProvider;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+
+import java.time.LocalDateTime;
+import java.util.function.LongFunction;
+
+public class SnubotCodecProvider implements CodecProvider
+{
+    // Decoded guilds keep their members on the heap, unless a registry is made with somewhere else for them
+    public static final CodecRegistry REGISTRY = registry(id -> new HeapMemberStore());
+
+    private final LongFunction<MemberStore> storeOpener;
+
+    public SnubotCodecProvider(LongFunction<MemberStore> storeOpener)
+    {
+        this.storeOpener = storeOpener;
+    }
+
+    public static CodecRegistry registry(LongFunction<MemberStore> storeOpener)
+    {
+        return CodecRegistries.fromRegistries(
+                CodecRegistries.fromProviders(new SnubotCodecProvider(storeOpener)),
+                MongoClient.getDefaultCodecRegistry());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> Codec<T> get(Class<T> clazz, CodecRegistry registry)
+    {
+        if (clazz == LocalDateTime.class)
+            return (Codec<T>) new LocalDateTimeCodec();
+        if (clazz == UserData.class)
+            return (Codec<T>) new UserDataCodec();
+        if (clazz == GuildData.class)
+            return (Codec<T>) new GuildDataCodec(registry, storeOpener);
+        if (clazz == MemberData.class)
+            return (Codec<T>) new MemberDataCodec(registry);
+        if (clazz == Leveling.class)
+            return (Codec<T>) new LevelingCodec(registry);
+        if (clazz == LevelRole.class)
+            return (Codec<T>) new LevelRoleCodec();
+        if (clazz == Coloring.class)
+            return (Codec<T>) new ColoringCodec();
+        if (clazz == Logging.class)
+            return (Codec<T>) new LoggingCodec();
+        if (clazz == LongSet.class)
+            return (Codec<T>) new LongSetCodec();
+        if (clazz == ReactMessage.class)
+            return (Codec<T>) new ReactMessageCodec(registry);
+        if (clazz == ReactEmoji.class)
+            return (Codec<T>) new ReactEmojiCodec(registry);
+        if (clazz == ReactRole.class)
+            return (Codec<T>) new ReactRoleCodec();
+        return null;
+    }
+}
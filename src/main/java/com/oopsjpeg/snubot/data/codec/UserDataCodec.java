@@ -0,0 +1,85 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.data.impl.Selections;
+import com.oopsjpeg.snubot.data.impl.UserData;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+
+public class UserDataCodec implements Codec<UserData>
+{
+    @Override
+    public void encode(BsonWriter writer, UserData value, EncoderContext context)
+    {
+        Selections selections = value.getSelections();
+        writer.writeStartDocument();
+        writer.writeString("_id", value.getId());
+        writer.writeStartDocument("selections");
+        CodecUtil.writeString(writer, "guildId", selections.getGuildId());
+        CodecUtil.writeString(writer, "channelId", selections.getChannelId());
+        CodecUtil.writeString(writer, "messageId", selections.getMessageId());
+        writer.writeEndDocument();
+        CodecUtil.writeUpdatedAt(writer);
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public UserData decode(BsonReader reader, DecoderContext context)
+    {
+        String id = null;
+        String guildId = null;
+        String channelId = null;
+        String messageId = null;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+        {
+            String name = reader.readName();
+            if (name.equals("_id"))
+                id = reader.readString();
+            else if (name.equals("selections") && reader.getCurrentBsonType() == BsonType.DOCUMENT)
+            {
+                reader.readStartDocument();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT)
+                {
+                    String field = reader.readName();
+                    if (CodecUtil.readNull(reader))
+                        continue;
+                    switch (field)
+                    {
+                        case "guildId":
+                            guildId = reader.readString();
+                            break;
+                        case "channelId":
+                            channelId = reader.readString();
+                            break;
+                        case "messageId":
+                            messageId = reader.readString();
+                            break;
+                        default:
+                            reader.skipValue();
+                    }
+                }
+                reader.readEndDocument();
+            }
+            else
+                reader.skipValue();
+        }
+        reader.readEndDocument();
+
+        UserData data = new UserData(id);
+        data.getSelections().setGuildId(guildId);
+        data.getSelections().setChannelId(channelId);
+        data.getSelections().setMessageId(messageId);
+        return data;
+    }
+
+    @Override
+    public Class<UserData> getEncoderClass()
+    {
+        return UserData.class;
+    }
+}
@@ -1,41 +1,57 @@
 package com.oopsjpeg.snubot.data.impl;
 
 import com.oopsjpeg.snubot.data.ChildData;
+import com.oopsjpeg.snubot.util.LongSet;
 import discord4j.common.util.Snowflake;
 import discord4j.core.object.entity.Member;
 import discord4j.core.object.entity.Role;
 import discord4j.core.object.entity.User;
 
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 public class Coloring implements ChildData<GuildData>
 {
-    private final Set<String> roleIdSet = new HashSet<>();
+    private final LongSet roleIdSet = new LongSet();
 
     private transient GuildData parent;
 
     private int levelRequired;
 
-    public Set<String> getRoleIdSet()
+    public Coloring()
+    {
+    }
+
+    public Coloring(int levelRequired)
+    {
+        this.levelRequired = levelRequired;
+    }
+
+    public LongSet getRoleIdSet()
     {
         return roleIdSet;
     }
 
     public Set<Role> getRoleSet()
     {
-        return roleIdSet.stream().map(id -> parent.getParent().getGateway().getRoleById(parent.getIdAsSnowflake(), Snowflake.of(id)).block()).collect(Collectors.toSet());
+        return Arrays.stream(roleIdSet.toArray()).mapToObj(id -> parent.getParent().getGateway().getRoleById(parent.getIdAsSnowflake(), Snowflake.of(id)).block()).collect(Collectors.toSet());
     }
 
-    public void addRole(String id)
+    public void addRole(long id)
     {
         roleIdSet.add(id);
+        parent.getChanges().set("coloring.roleIdSet", roleIdSet);
+    }
+
+    public void addRole(String id)
+    {
+        addRole(Long.parseLong(id));
     }
 
     public void addRole(Snowflake id)
     {
-        addRole(id.asString());
+        addRole(id.asLong());
     }
 
     public void addRole(Role role)
@@ -43,14 +59,20 @@ public class Coloring implements ChildData<GuildData>
         addRole(role.getId());
     }
 
-    public void removeRole(String id)
+    public void removeRole(long id)
     {
         roleIdSet.remove(id);
+        parent.getChanges().set("coloring.roleIdSet", roleIdSet);
+    }
+
+    public void removeRole(String id)
+    {
+        removeRole(Long.parseLong(id));
     }
 
     public void removeRole(Snowflake id)
     {
-        removeRole(id.asString());
+        removeRole(id.asLong());
     }
 
     public void removeRole(Role role)
@@ -58,14 +80,19 @@ public class Coloring implements ChildData<GuildData>
         removeRole(role.getId());
     }
 
-    public boolean hasRole(String id)
+    public boolean hasRole(long id)
     {
         return roleIdSet.contains(id);
     }
 
+    public boolean hasRole(String id)
+    {
+        return hasRole(Long.parseLong(id));
+    }
+
     public boolean hasRole(Snowflake id)
     {
-        return hasRole(id.asString());
+        return hasRole(id.asLong());
     }
 
     public boolean hasRole(Role role)
@@ -76,6 +103,7 @@ public class Coloring implements ChildData<GuildData>
     public void clearRoles()
     {
         roleIdSet.clear();
+        parent.getChanges().set("coloring.roleIdSet", roleIdSet);
     }
 
     public void setUserColor(User user, Role role)
@@ -85,7 +113,7 @@ public class Coloring implements ChildData<GuildData>
         if (!member.getRoleIds().contains(role.getId()))
             member.addRole(role.getId()).block();
 
-        roleIdSet.stream().map(Snowflake::of)
+        Arrays.stream(roleIdSet.toArray()).mapToObj(Snowflake::of)
                 .filter(id -> !role.getId().equals(id))
                 .filter(id -> member.getRoleIds().contains(id))
                 .forEach(id -> member.removeRole(id).block());
@@ -99,6 +127,7 @@ public class Coloring implements ChildData<GuildData>
     public void setLevelRequired(int levelRequired)
     {
         this.levelRequired = levelRequired;
+        parent.getChanges().set("coloring.levelRequired", levelRequired);
     }
 
     public boolean hasLevelRequired()
@@ -1,34 +1,59 @@
 package com.oopsjpeg.snubot.data.impl;
 
 import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.data.Changes;
 import com.oopsjpeg.snubot.data.ChildData;
 import com.oopsjpeg.snubot.data.DiscordData;
 import com.oopsjpeg.snubot.data.SaveData;
+import com.oopsjpeg.snubot.data.SaveMarker;
+import com.oopsjpeg.snubot.data.store.HeapMemberStore;
+import com.oopsjpeg.snubot.data.store.MemberStore;
 import discord4j.common.util.Snowflake;
 import discord4j.core.object.entity.Guild;
 import discord4j.core.object.entity.Role;
 import discord4j.core.object.entity.User;
 import reactor.core.publisher.Mono;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
 
 public class GuildData extends DiscordData implements ChildData<Snubot>, SaveData
 {
-    private final Map<String, MemberData> memberDataMap = new HashMap<>();
     private Leveling leveling = new Leveling();
     private Coloring coloring = new Coloring();
     private Logging logging = new Logging();
 
+    private transient volatile MemberStore memberStore;
     private transient Snubot parent;
-    private transient boolean markedForSave;
+    private final transient SaveMarker saveMarker = new SaveMarker();
+    private final transient Changes changes = new Changes(this);
 
     private String modRoleId;
     private String logChannelId;
+    // Null means the bot's default prefix
+    private String prefix;
 
     public GuildData(final String id)
+    {
+        this(id, new HeapMemberStore());
+    }
+
+    public GuildData(final String id, MemberStore memberStore)
     {
         super(id);
+        this.memberStore = memberStore;
+    }
+
+    public GuildData(final String id, Leveling leveling, Coloring coloring, Logging logging, String modRoleId, String prefix, MemberStore memberStore)
+    {
+        super(id);
+        this.memberStore = memberStore;
+        this.leveling = leveling;
+        this.coloring = coloring;
+        this.logging = logging;
+        this.modRoleId = modRoleId;
+        this.prefix = prefix;
     }
 
     public Mono<Guild> discord()
@@ -36,19 +61,137 @@ public class GuildData extends DiscordData implements ChildData<Snubot>, SaveDat
         return parent.getGateway().getGuildById(getIdAsSnowflake());
     }
 
-    public Map<String, MemberData> getMemberDataMap()
+    public MemberStore getMemberStore()
+    {
+        return memberStore;
+    }
+
+    public int getMemberCount()
+    {
+        return memberStore.size();
+    }
+
+    public List<MemberData> getMemberDataList()
+    {
+        MemberStore store = memberStore;
+        synchronized (store)
+        {
+            List<MemberData> memberList = new ArrayList<>(store.size());
+            for (int slot : store.slots())
+                memberList.add(getMemberDataAt(store, slot));
+            return memberList;
+        }
+    }
+
+    public MemberData getMemberDataAt(int slot)
     {
-        return memberDataMap;
+        return getMemberDataAt(memberStore, slot);
+    }
+
+    private MemberData getMemberDataAt(MemberStore store, int slot)
+    {
+        synchronized (store)
+        {
+            return new MemberData(this, store, store.getId(slot), slot);
+        }
+    }
+
+    public MemberData putMemberData(MemberData member)
+    {
+        // Copies a loaded member into the store and hands back its view
+        MemberStore store = memberStore;
+        synchronized (store)
+        {
+            int slot = store.add(member.getIdAsLong());
+            // Changes the last run never saved are newer than the loaded copy
+            if (!store.isUnsaved(slot))
+                member.copyTo(store, slot);
+            return getMemberDataAt(store, slot);
+        }
+    }
+
+    public void takeMembers(GuildData data)
+    {
+        // A reloaded guild document keeps the members of the copy it replaces
+        memberStore = data.memberStore;
+    }
+
+    @Override
+    public void touch()
+    {
+        if (parent != null && parent.getJournalManager() != null)
+            parent.getJournalManager().touch(this);
+    }
+
+    public void touchMembers()
+    {
+        if (parent != null && parent.getJournalManager() != null)
+            parent.getJournalManager().touchMembers(this);
+    }
+
+    public void reward(long[] memberIds, long[] times, float[] coins, float[] xp, int count)
+    {
+        reward(memberIds, times, coins, xp, 0, count);
+    }
+
+    public void reward(long[] memberIds, long[] times, float[] coins, float[] xp, int from, int to)
+    {
+        // Folds a batch of message rewards in under one lock, touching the journal once
+        Leveling leveling = getLeveling();
+        long cooldown = leveling.getMessageCooldown();
+        XpCurve curve = leveling.getXpCurve();
+        MemberStore store = memberStore;
+        BitSet rewardedSet = new BitSet();
+        List<Long> leveledList = new ArrayList<>();
+        synchronized (store)
+        {
+            for (int i = from; i < to; i++)
+            {
+                int slot = store.add(memberIds[i]);
+                if (times[i] - store.getLastMessageTime(slot) < cooldown)
+                    continue;
+                store.setLastMessageTime(slot, times[i]);
+                store.addCoins(slot, coins[i]);
+                store.addXp(slot, xp[i]);
+                rewardedSet.set(slot);
+            }
+            // Levels are only resolved once per member, however many messages they sent
+            for (int slot = rewardedSet.nextSetBit(0); slot >= 0; slot = rewardedSet.nextSetBit(slot + 1))
+            {
+                if (MemberData.applyLevelUp(store, slot, curve))
+                    leveledList.add(store.getId(slot));
+                store.markDirty(slot);
+            }
+        }
+        if (rewardedSet.isEmpty()) return;
+        touchMembers();
+        leveledList.forEach(this::requestRoleSync);
+    }
+
+    public void requestRoleSync(long memberId)
+    {
+        if (parent != null && parent.getRoleSyncManager() != null && !getLeveling().getRoleMap().isEmpty())
+            parent.getRoleSyncManager().request(this, memberId);
+    }
+
+    public MemberData getMemberData(long id)
+    {
+        MemberStore store = memberStore;
+        synchronized (store)
+        {
+            int slot = store.slotOf(id);
+            return slot >= 0 ? getMemberDataAt(store, slot) : null;
+        }
     }
 
     public MemberData getMemberData(String id)
     {
-        return (MemberData) memberDataMap.get(id).parent(this);
+        return getMemberData(Long.parseLong(id));
     }
 
     public MemberData getMemberData(Snowflake id)
     {
-        return getMemberData(id.asString());
+        return getMemberData(id.asLong());
     }
 
     public MemberData getMemberData(User user)
@@ -56,15 +199,30 @@ public class GuildData extends DiscordData implements ChildData<Snubot>, SaveDat
         return getMemberData(user.getId());
     }
 
+    public MemberData addMemberData(long id)
+    {
+        MemberStore store = memberStore;
+        MemberData member;
+        synchronized (store)
+        {
+            // Starts the member over if it was already there, and writes every field so the old values go too
+            store.remove(id);
+            int slot = store.add(id);
+            store.markSet(slot, MemberStore.ALL);
+            member = getMemberDataAt(store, slot);
+        }
+        touchMembers();
+        return member;
+    }
+
     public MemberData addMemberData(String id)
     {
-        memberDataMap.put(id, new MemberData(id));
-        return getMemberData(id);
+        return addMemberData(Long.parseLong(id));
     }
 
     public MemberData addMemberData(Snowflake id)
     {
-        return addMemberData(id.asString());
+        return addMemberData(id.asLong());
     }
 
     public MemberData addMemberData(User user)
@@ -72,14 +230,27 @@ public class GuildData extends DiscordData implements ChildData<Snubot>, SaveDat
         return addMemberData(user.getId());
     }
 
+    public void removeMemberData(long id)
+    {
+        // The store remembers the removal, so the member's document is deleted on the next save
+        MemberStore store = memberStore;
+        boolean removed;
+        synchronized (store)
+        {
+            removed = store.remove(id);
+        }
+        if (removed)
+            touchMembers();
+    }
+
     public void removeMemberData(String id)
     {
-        memberDataMap.remove(id);
+        removeMemberData(Long.parseLong(id));
     }
 
     public void removeMemberData(Snowflake id)
     {
-        removeMemberData(id.asString());
+        removeMemberData(id.asLong());
     }
 
     public void removeMemberData(User user)
@@ -87,14 +258,23 @@ public class GuildData extends DiscordData implements ChildData<Snubot>, SaveDat
         removeMemberData(user.getId());
     }
 
+    public boolean hasMemberData(long id)
+    {
+        MemberStore store = memberStore;
+        synchronized (store)
+        {
+            return store.slotOf(id) >= 0;
+        }
+    }
+
     public boolean hasMemberData(String id)
     {
-        return memberDataMap.containsKey(id);
+        return hasMemberData(Long.parseLong(id));
     }
 
     public boolean hasMemberData(Snowflake id)
     {
-        return hasMemberData(id.asString());
+        return hasMemberData(id.asLong());
     }
 
     public boolean hasMemberData(User user)
@@ -102,16 +282,23 @@ public class GuildData extends DiscordData implements ChildData<Snubot>, SaveDat
         return hasMemberData(user.getId());
     }
 
+    public MemberData getOrAddMemberData(long id)
+    {
+        MemberStore store = memberStore;
+        synchronized (store)
+        {
+            return getMemberDataAt(store, store.add(id));
+        }
+    }
+
     public MemberData getOrAddMemberData(String id)
     {
-        if (!hasMemberData(id))
-            return addMemberData(id);
-        return getMemberData(id);
+        return getOrAddMemberData(Long.parseLong(id));
     }
 
     public MemberData getOrAddMemberData(Snowflake id)
     {
-        return getOrAddMemberData(id.asString());
+        return getOrAddMemberData(id.asLong());
     }
 
     public MemberData getOrAddMemberData(User user)
@@ -158,6 +345,7 @@ public class GuildData extends DiscordData implements ChildData<Snubot>, SaveDat
     public void setModRoleId(String modRoleId)
     {
         this.modRoleId = modRoleId;
+        getChanges().set("modRoleId", modRoleId);
     }
 
     public void setModRoleId(Snowflake modRoleId)
@@ -175,6 +363,29 @@ public class GuildData extends DiscordData implements ChildData<Snubot>, SaveDat
         return getModRoleId() != null;
     }
 
+    public String getPrefix()
+    {
+        return prefix;
+    }
+
+    public void setPrefix(String prefix)
+    {
+        this.prefix = prefix != null ? prefix.toLowerCase() : null;
+        if (prefix != null)
+            getChanges().set("prefix", this.prefix);
+        else
+            getChanges().unset("prefix");
+
+        // The command manager keeps its own copy for matching messages
+        if (parent != null && parent.getCommandManager() != null)
+            parent.getCommandManager().getPrefixMatcher().update(getIdAsLong(), this.prefix);
+    }
+
+    public boolean hasPrefix()
+    {
+        return prefix != null;
+    }
+
     @Override
     public Snubot getParent()
     {
@@ -188,14 +399,14 @@ public class GuildData extends DiscordData implements ChildData<Snubot>, SaveDat
     }
 
     @Override
-    public boolean isMarkedForSave()
+    public SaveMarker getSaveMarker()
     {
-        return markedForSave;
+        return saveMarker;
     }
 
     @Override
-    public void setMarkedForSave(boolean markedForSave)
+    public Changes getChanges()
     {
-        this.markedForSave = markedForSave;
+        return changes;
     }
 }
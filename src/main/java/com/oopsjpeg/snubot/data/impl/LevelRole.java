@@ -11,15 +11,20 @@ public class LevelRole extends DiscordData implements ChildData<Leveling>
 
     private transient Leveling parent;
 
-    public LevelRole(String id, int level)
+    public LevelRole(long id, int level)
     {
         super(id);
         this.level = level;
     }
 
+    public LevelRole(String id, int level)
+    {
+        this(Long.parseLong(id), level);
+    }
+
     public Mono<Role> getRole()
     {
-        return parent.getParent().getParent().getGateway().getRoleById(parent.getParent().getIdAsSnowflake(), getIdAsSnowflake());
+        return parent.getParent().getParent().getRoleCacheManager().fetchRole(parent.getParent().getIdAsSnowflake(), getIdAsSnowflake());
     }
 
     public int getLevel()
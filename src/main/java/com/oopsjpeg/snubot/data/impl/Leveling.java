@@ -1,46 +1,117 @@
 package com.oopsjpeg.snubot.data.impl;
 
 import com.oopsjpeg.snubot.data.ChildData;
+import com.oopsjpeg.snubot.manager.RoleCacheManager;
+import com.oopsjpeg.snubot.util.LongObjectMap;
 import discord4j.common.util.Snowflake;
 import discord4j.core.object.entity.Member;
 import discord4j.core.object.entity.Role;
 import discord4j.core.object.entity.User;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 public class Leveling implements ChildData<GuildData>
 {
-    private final Map<String, LevelRole> roleMap = new HashMap<>();
+    public static final long DEFAULT_MESSAGE_COOLDOWN = TimeUnit.MINUTES.toMillis(1);
+
+    private final LongObjectMap<LevelRole> roleMap = new LongObjectMap<>();
 
     private transient GuildData parent;
 
+    private transient volatile XpCurve xpCurve;
+    // Role IDs by level, rebuilt whenever the roles change
+    private transient volatile NavigableMap<Integer, long[]> levelIndex;
+
     private int maxLevel;
 
-    public Map<String, LevelRole> getRoleMap()
+    private double xpBase = XpCurve.DEFAULT_BASE;
+    private double xpMultiplier = XpCurve.DEFAULT_MULTIPLIER;
+    private double xpExponent = XpCurve.DEFAULT_EXPONENT;
+
+    private long messageCooldown = DEFAULT_MESSAGE_COOLDOWN;
+
+    // Last member ID a reconcile got through, or -1 if none is running
+    private long reconcileCheckpoint = -1;
+
+    public Leveling()
+    {
+    }
+
+    public Leveling(int maxLevel)
+    {
+        this.maxLevel = maxLevel;
+    }
+
+    public Leveling(int maxLevel, double xpBase, double xpMultiplier, double xpExponent, long messageCooldown, long reconcileCheckpoint)
+    {
+        this.maxLevel = maxLevel;
+        this.xpBase = xpBase;
+        this.xpMultiplier = xpMultiplier;
+        this.xpExponent = xpExponent;
+        this.messageCooldown = messageCooldown;
+        this.reconcileCheckpoint = reconcileCheckpoint;
+    }
+
+    public LongObjectMap<LevelRole> getRoleMap()
     {
         return roleMap;
     }
 
-    public List<Role> getRolesForLevel(int level)
+    public NavigableMap<Integer, long[]> getLevelIndex()
     {
-        return roleMap.values().stream()
-                .map(r -> (LevelRole) r.parent(this))
-                .filter(r -> r.getLevel() == level)
-                .map(r -> r.getRole().block())
-                .collect(Collectors.toList());
+        NavigableMap<Integer, long[]> index = levelIndex;
+        if (index == null)
+        {
+            TreeMap<Integer, long[]> built = new TreeMap<>();
+            roleMap.forEach((id, r) ->
+            {
+                long[] ids = built.get(r.getLevel());
+                ids = ids == null ? new long[1] : Arrays.copyOf(ids, ids.length + 1);
+                ids[ids.length - 1] = id;
+                built.put(r.getLevel(), ids);
+            });
+            levelIndex = index = Collections.unmodifiableNavigableMap(built);
+        }
+        return index;
     }
 
-    public LevelRole getRole(String id)
+    public long[] getRoleIdsForLevel(int level)
+    {
+        return getLevelIndex().getOrDefault(level, new long[0]);
+    }
+
+    public long[] getRoleIdsUpTo(int level)
+    {
+        return getLevelIndex().headMap(level, true).values().stream().flatMapToLong(Arrays::stream).toArray();
+    }
+
+    public Flux<Role> getRolesForLevel(int level)
+    {
+        // Cached roles come straight back, and the rest are fetched rather than left out
+        RoleCacheManager roleCache = parent.getParent().getRoleCacheManager();
+        return Flux.fromArray(Arrays.stream(getRoleIdsForLevel(level)).boxed().toArray(Long[]::new))
+                .concatMap(id -> roleCache.fetchRole(parent.getIdAsSnowflake(), Snowflake.of(id))
+                        // Roles deleted from the guild have nothing to show
+                        .onErrorResume(e -> Mono.empty()));
+    }
+
+    public LevelRole getRole(long id)
     {
         return (LevelRole) roleMap.get(id).parent(this);
     }
 
+    public LevelRole getRole(String id)
+    {
+        return getRole(Long.parseLong(id));
+    }
+
     public LevelRole getRole(Snowflake id)
     {
-        return getRole(id.asString());
+        return getRole(id.asLong());
     }
 
     public LevelRole getRole(Role role)
@@ -48,15 +119,23 @@ public class Leveling implements ChildData<GuildData>
         return getRole(role.getId());
     }
 
-    public LevelRole addRole(String id, int level)
+    public LevelRole addRole(long id, int level)
     {
-        roleMap.put(id, new LevelRole(id, level));
+        LevelRole role = new LevelRole(id, level);
+        roleMap.put(id, role);
+        levelIndex = null;
+        parent.getChanges().set("leveling.roleMap." + id, role);
         return getRole(id);
     }
 
+    public LevelRole addRole(String id, int level)
+    {
+        return addRole(Long.parseLong(id), level);
+    }
+
     public LevelRole addRole(Snowflake id, int level)
     {
-        return addRole(id.asString(), level);
+        return addRole(id.asLong(), level);
     }
 
     public LevelRole addRole(Role role, int level)
@@ -64,14 +143,21 @@ public class Leveling implements ChildData<GuildData>
         return addRole(role.getId(), level);
     }
 
-    public void removeRole(String id)
+    public void removeRole(long id)
     {
         roleMap.remove(id);
+        levelIndex = null;
+        parent.getChanges().unset("leveling.roleMap." + id);
+    }
+
+    public void removeRole(String id)
+    {
+        removeRole(Long.parseLong(id));
     }
 
     public void removeRole(Snowflake id)
     {
-        removeRole(id.asString());
+        removeRole(id.asLong());
     }
 
     public void removeRole(Role role)
@@ -79,14 +165,19 @@ public class Leveling implements ChildData<GuildData>
         removeRole(role.getId());
     }
 
-    public boolean hasRole(String id)
+    public boolean hasRole(long id)
     {
         return roleMap.containsKey(id);
     }
 
+    public boolean hasRole(String id)
+    {
+        return hasRole(Long.parseLong(id));
+    }
+
     public boolean hasRole(Snowflake id)
     {
-        return hasRole(id.asString());
+        return hasRole(id.asLong());
     }
 
     public boolean hasRole(Role role)
@@ -94,27 +185,38 @@ public class Leveling implements ChildData<GuildData>
         return hasRole(role.getId());
     }
 
-    public void syncRoles(User user)
+    public Set<Snowflake> getSyncedRoleIds(Set<Snowflake> roleIds, int level)
     {
-        if (getParent().hasMemberData(user))
-        {
-            Member member = user.asMember(getParent().getIdAsSnowflake()).block();
-            MemberData memberData = getParent().getMemberData(user);
+        // Keeps the member's other roles and only swaps the level-based ones
+        Set<Snowflake> syncedIds = new HashSet<>(roleIds);
+        NavigableMap<Integer, long[]> index = getLevelIndex();
+        index.headMap(level, true).values().forEach(ids -> Arrays.stream(ids).forEach(id -> syncedIds.add(Snowflake.of(id))));
+        index.tailMap(level, false).values().forEach(ids -> Arrays.stream(ids).forEach(id -> syncedIds.remove(Snowflake.of(id))));
+        return syncedIds;
+    }
 
-            roleMap.values().forEach(r ->
-            {
-                if (memberData.getLevel() >= r.getLevel() && !member.getRoleIds().contains(r.getIdAsSnowflake()))
-                    member.addRole(r.getIdAsSnowflake()).block();
+    public Mono<Void> syncRoles(Member member)
+    {
+        MemberData memberData = getParent().getMemberData(member.getId());
+        if (memberData == null || roleMap.isEmpty())
+            return Mono.empty();
 
-                if (memberData.getLevel() < r.getLevel() && member.getRoleIds().contains(r.getIdAsSnowflake()))
-                    member.removeRole(r.getIdAsSnowflake()).block();
-            });
-        }
+        // Everything is worked out up front, so it takes one edit at most
+        Set<Snowflake> roleIds = getSyncedRoleIds(member.getRoleIds(), memberData.getLevel());
+        if (roleIds.equals(member.getRoleIds()))
+            return Mono.empty();
+        return member.edit(spec -> spec.setRoles(roleIds));
+    }
+
+    public void syncRoles(User user)
+    {
+        syncRoles(user.getId());
     }
 
     public void syncRoles(Snowflake id)
     {
-        syncRoles(parent.getParent().getGateway().getUserById(id).block());
+        if (getParent().hasMemberData(id))
+            parent.getParent().getGateway().getMemberById(parent.getIdAsSnowflake(), id).flatMap(this::syncRoles).block();
     }
 
     public void syncRoles(String id)
@@ -129,7 +231,75 @@ public class Leveling implements ChildData<GuildData>
 
     public void setMaxLevel(int maxLevel)
     {
+        if (maxLevel < 0 || maxLevel > XpCurve.MAX_LEVEL)
+            throw new IllegalArgumentException("Max level " + maxLevel + " is outside of 0 to " + XpCurve.MAX_LEVEL);
         this.maxLevel = maxLevel;
+        xpCurve = null;
+        parent.getChanges().set("leveling.maxLevel", maxLevel);
+    }
+
+    public XpCurve getXpCurve()
+    {
+        // Built once and kept until the curve or max level changes
+        XpCurve curve = xpCurve;
+        if (curve == null)
+            xpCurve = curve = new XpCurve(xpBase, xpMultiplier, xpExponent, maxLevel);
+        return curve;
+    }
+
+    public void setXpCurve(double xpBase, double xpMultiplier, double xpExponent)
+    {
+        if (!XpCurve.fits(xpBase, xpMultiplier, xpExponent))
+            throw new IllegalArgumentException("XP curve takes more than " + Integer.MAX_VALUE + " XP per level by level " + XpCurve.MAX_LEVEL);
+        this.xpBase = xpBase;
+        this.xpMultiplier = xpMultiplier;
+        this.xpExponent = xpExponent;
+        xpCurve = null;
+        parent.getChanges().set("leveling.xpBase", xpBase);
+        parent.getChanges().set("leveling.xpMultiplier", xpMultiplier);
+        parent.getChanges().set("leveling.xpExponent", xpExponent);
+    }
+
+    public double getXpBase()
+    {
+        return xpBase;
+    }
+
+    public double getXpMultiplier()
+    {
+        return xpMultiplier;
+    }
+
+    public double getXpExponent()
+    {
+        return xpExponent;
+    }
+
+    public long getMessageCooldown()
+    {
+        return messageCooldown;
+    }
+
+    public void setMessageCooldown(long messageCooldown)
+    {
+        this.messageCooldown = messageCooldown;
+        parent.getChanges().set("leveling.messageCooldown", messageCooldown);
+    }
+
+    public long getReconcileCheckpoint()
+    {
+        return reconcileCheckpoint;
+    }
+
+    public void setReconcileCheckpoint(long reconcileCheckpoint)
+    {
+        this.reconcileCheckpoint = reconcileCheckpoint;
+        parent.getChanges().set("leveling.reconcileCheckpoint", reconcileCheckpoint);
+    }
+
+    public boolean hasReconcileCheckpoint()
+    {
+        return reconcileCheckpoint >= 0;
     }
 
     public boolean hasMaxLevel()
@@ -1,34 +1,48 @@
 package com.oopsjpeg.snubot.data.impl;
 
 import com.oopsjpeg.snubot.data.ChildData;
+import com.oopsjpeg.snubot.util.LongSet;
 import discord4j.common.util.Snowflake;
 import discord4j.core.object.entity.channel.TextChannel;
 import reactor.core.publisher.Mono;
 
-import java.util.HashSet;
-import java.util.Set;
 
 public class Logging implements ChildData<GuildData>
 {
-    private final Set<String> ignoredChannelIds = new HashSet<>();
+    private final LongSet ignoredChannelIds = new LongSet();
 
     private transient GuildData parent;
 
     private String channelId;
 
-    public Set<String> getIgnoredChannelIds()
+    public Logging()
+    {
+    }
+
+    public Logging(String channelId)
+    {
+        this.channelId = channelId;
+    }
+
+    public LongSet getIgnoredChannelIds()
     {
         return ignoredChannelIds;
     }
 
-    public void addIgnoredChannelId(String channelId)
+    public void addIgnoredChannelId(long channelId)
     {
         ignoredChannelIds.add(channelId);
+        parent.getChanges().set("logging.ignoredChannelIds", ignoredChannelIds);
+    }
+
+    public void addIgnoredChannelId(String channelId)
+    {
+        addIgnoredChannelId(Long.parseLong(channelId));
     }
 
     public void addIgnoredChannelId(Snowflake channelId)
     {
-        addIgnoredChannelId(channelId.asString());
+        addIgnoredChannelId(channelId.asLong());
     }
 
     public void addIgnoredChannel(TextChannel channel)
@@ -36,14 +50,20 @@ public class Logging implements ChildData<GuildData>
         addIgnoredChannelId(channel.getId());
     }
 
-    public void removeIgnoredChannelId(String channelId)
+    public void removeIgnoredChannelId(long channelId)
     {
         ignoredChannelIds.remove(channelId);
+        parent.getChanges().set("logging.ignoredChannelIds", ignoredChannelIds);
+    }
+
+    public void removeIgnoredChannelId(String channelId)
+    {
+        removeIgnoredChannelId(Long.parseLong(channelId));
     }
 
     public void removeIgnoredChannelId(Snowflake channelId)
     {
-        removeIgnoredChannelId(channelId.asString());
+        removeIgnoredChannelId(channelId.asLong());
     }
 
     public void removeIgnoredChannel(TextChannel channel)
@@ -51,14 +71,19 @@ public class Logging implements ChildData<GuildData>
         removeIgnoredChannelId(channel.getId());
     }
 
-    public boolean hasIgnoredChannelId(String channelId)
+    public boolean hasIgnoredChannelId(long channelId)
     {
         return ignoredChannelIds.contains(channelId);
     }
 
+    public boolean hasIgnoredChannelId(String channelId)
+    {
+        return hasIgnoredChannelId(Long.parseLong(channelId));
+    }
+
     public boolean hasIgnoredChannelId(Snowflake channelId)
     {
-        return hasIgnoredChannelId(channelId.asString());
+        return hasIgnoredChannelId(channelId.asLong());
     }
 
     public boolean hasIgnoredChannel(TextChannel channel)
@@ -84,6 +109,7 @@ public class Logging implements ChildData<GuildData>
     public void setChannelId(String channelId)
     {
         this.channelId = channelId;
+        parent.getChanges().set("logging.channelId", channelId);
     }
 
     public void setChannelId(Snowflake channelId)
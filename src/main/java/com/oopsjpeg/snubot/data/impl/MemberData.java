@@ -1,38 +1,78 @@
 package com.oopsjpeg.snubot.data.impl;
 
+import com.oopsjpeg.snubot.data.Changes;
 import com.oopsjpeg.snubot.data.ChildData;
 import com.oopsjpeg.snubot.data.DiscordData;
+import com.oopsjpeg.snubot.data.store.HeapMemberStore;
+import com.oopsjpeg.snubot.data.store.MemberStore;
 import discord4j.core.object.entity.Member;
 import reactor.core.publisher.Mono;
 
+import java.time.Clock;
+import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.Random;
+import java.time.ZoneOffset;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
+// A view of one slot in its guild's member store
 public class MemberData extends DiscordData implements ChildData<GuildData>
 {
     public static final float DAILY_COINS = 250;
     public static final float DAILY_XP = 0.1f;
 
-    private static final Random RANDOM = new Random();
+    // Swappable so cooldowns can run on something other than the system clock
+    private static volatile Clock clock = Clock.systemUTC();
+    // Detached members have no guild to take a curve from
+    private static final XpCurve DEFAULT_CURVE = new XpCurve(XpCurve.DEFAULT_BASE, XpCurve.DEFAULT_MULTIPLIER, XpCurve.DEFAULT_EXPONENT, 0);
+
+    private final long guildId;
+    private final MemberStore store;
+    private int slot;
 
     private transient GuildData parent;
-    private transient LocalDateTime lastMessageTime;
 
-    private float coins;
+    MemberData(GuildData parent, MemberStore store, long id, int slot)
+    {
+        super(id);
+        this.guildId = parent.getIdAsLong();
+        this.store = store;
+        this.slot = slot;
+        this.parent = parent;
+    }
 
-    private float xp;
-    private int level;
+    // Detached members hold their own store until they're put in a guild
+    public MemberData(final long id, final long guildId)
+    {
+        super(id);
+        this.guildId = guildId;
+        store = new HeapMemberStore(1);
+        slot = store.add(id);
+    }
 
-    private LocalDateTime lastDailyTime;
+    public MemberData(final String id, final String guildId)
+    {
+        this(Long.parseLong(id), Long.parseLong(guildId));
+    }
 
-    public MemberData(final String id)
+    public MemberData(final String id, final String guildId, float coins, float xp, int level, LocalDateTime lastDailyTime)
     {
-        super(id);
+        this(id, guildId);
+        store.setCoins(slot, coins);
+        store.setXp(slot, xp);
+        store.setLevel(slot, level);
+        store.setLastDailyTime(slot, toEpoch(lastDailyTime));
     }
 
-    public static int maxXp(int level)
+    // Daily times were always stored without a zone, so they're converted as UTC to keep them as they were
+    private static long toEpoch(LocalDateTime time)
     {
-        return (int) (220 + Math.pow(level * 90, 1.06));
+        return time == null ? 0 : time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromEpoch(long time)
+    {
+        return time == 0 ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneOffset.UTC);
     }
 
     public Mono<Member> discord()
@@ -40,90 +80,270 @@ public class MemberData extends DiscordData implements ChildData<GuildData>
         return parent.getParent().getGateway().getMemberById(parent.getIdAsSnowflake(), getIdAsSnowflake());
     }
 
+    public String getGuildId()
+    {
+        return Long.toString(guildId);
+    }
+
+    public long getGuildIdAsLong()
+    {
+        return guildId;
+    }
+
+    private int slot()
+    {
+        // Slots are reused, so make sure this one still belongs to the member
+        if (store.getId(slot) != getIdAsLong())
+        {
+            slot = store.slotOf(getIdAsLong());
+            if (slot < 0)
+                throw new IllegalStateException("Member data of ID " + getId() + " was removed");
+        }
+        return slot;
+    }
+
+    private void changed()
+    {
+        store.markDirty(slot);
+        if (parent != null)
+            parent.touchMembers();
+    }
+
+    private void changed(int fields)
+    {
+        store.markSet(slot, fields);
+        if (parent != null)
+            parent.touchMembers();
+    }
+
+    void copyTo(MemberStore target, int targetSlot)
+    {
+        synchronized (store)
+        {
+            int slot = slot();
+            target.setCoins(targetSlot, store.getCoins(slot));
+            target.setXp(targetSlot, store.getXp(slot));
+            target.setLevel(targetSlot, store.getLevel(slot));
+            target.setLastDailyTime(targetSlot, store.getLastDailyTime(slot));
+        }
+    }
+
+    public void markForSave()
+    {
+        synchronized (store)
+        {
+            slot();
+            changed(MemberStore.ALL);
+        }
+    }
+
+    public Changes drainChanges()
+    {
+        // Fields that were set go out as they are, counters as what they gained since the last save
+        Changes changes = new Changes();
+        synchronized (store)
+        {
+            int slot = slot();
+            int fields = store.getSetFields(slot);
+            if ((fields & MemberStore.COINS) != 0)
+                changes.set("coins", (double) store.getCoins(slot));
+            else if (store.getCoinsDelta(slot) != 0)
+                changes.inc("coins", store.getCoinsDelta(slot));
+            if ((fields & MemberStore.XP) != 0)
+                changes.set("xp", (double) store.getXp(slot));
+            else if (store.getXpDelta(slot) != 0)
+                changes.inc("xp", store.getXpDelta(slot));
+            if ((fields & MemberStore.LEVEL) != 0)
+                changes.set("level", store.getLevel(slot));
+            else if (store.getLevelDelta(slot) != 0)
+                changes.inc("level", store.getLevelDelta(slot));
+            if ((fields & MemberStore.LAST_DAILY_TIME) != 0)
+            {
+                if (store.getLastDailyTime(slot) != 0)
+                    changes.set("lastDailyTime", fromEpoch(store.getLastDailyTime(slot)));
+                else
+                    changes.unset("lastDailyTime");
+            }
+            store.clearPending(slot);
+        }
+        return changes;
+    }
+
+    public static Clock getClock()
+    {
+        return clock;
+    }
+
+    public static void setClock(Clock clock)
+    {
+        MemberData.clock = clock;
+    }
+
+    public static float rollMessageCoins()
+    {
+        return 3 + ThreadLocalRandom.current().nextInt(4);
+    }
+
+    public static float rollMessageXp()
+    {
+        return 24 + ThreadLocalRandom.current().nextInt(11);
+    }
+
     public boolean message()
     {
-        if (lastMessageTime == null || LocalDateTime.now().isAfter(lastMessageTime.plusMinutes(1)))
+        long cooldown = parent != null ? parent.getLeveling().getMessageCooldown() : Leveling.DEFAULT_MESSAGE_COOLDOWN;
+        synchronized (store)
         {
-            lastMessageTime = LocalDateTime.now();
-            addCoins(3 + RANDOM.nextInt(4));
-            addXp(24 + RANDOM.nextInt(11));
-            return true;
+            int slot = slot();
+            // Never messaged is 0, which is always far enough back
+            long now = clock.millis();
+            if (now - store.getLastMessageTime(slot) < cooldown)
+                return false;
+            store.setLastMessageTime(slot, now);
         }
-        return false;
+        addCoins(rollMessageCoins());
+        addXp(rollMessageXp());
+        return true;
     }
 
     public float getCoins()
     {
-        return coins;
+        synchronized (store)
+        {
+            return store.getCoins(slot());
+        }
     }
 
     public void setCoins(float coins)
     {
-        this.coins = coins;
+        synchronized (store)
+        {
+            store.setCoins(slot(), coins);
+            changed(MemberStore.COINS);
+        }
     }
 
     public void addCoins(float coins)
     {
-        setCoins(getCoins() + coins);
+        synchronized (store)
+        {
+            store.addCoins(slot(), coins);
+            changed();
+        }
     }
 
     public void subCoins(float coins)
     {
-        setCoins(getCoins() - coins);
+        addCoins(-coins);
     }
 
     public float getXp()
     {
-        return xp;
+        synchronized (store)
+        {
+            return store.getXp(slot());
+        }
     }
 
     public void setXp(float xp)
     {
-        this.xp = xp;
+        synchronized (store)
+        {
+            store.setXp(slot(), xp);
+            changed(MemberStore.XP);
+        }
     }
 
     public void addXp(float xp)
     {
-        setXp(getXp() + xp);
-        levelUp();
+        boolean leveled;
+        synchronized (store)
+        {
+            int slot = slot();
+            store.addXp(slot, xp);
+            leveled = applyLevelUp(slot);
+            changed();
+        }
+        // Roles are synced in the background, once the lock is let go
+        if (leveled)
+            parent.requestRoleSync(getIdAsLong());
+    }
+
+    private XpCurve curve()
+    {
+        return parent != null ? parent.getLeveling().getXpCurve() : DEFAULT_CURVE;
     }
 
     public float getMaxXp()
     {
-        return maxXp(level);
+        return curve().maxXp(getLevel());
     }
 
     public int getLevel()
     {
-        return level;
+        synchronized (store)
+        {
+            return store.getLevel(slot());
+        }
     }
 
     public void setLevel(int level)
     {
-        this.level = level;
+        synchronized (store)
+        {
+            store.setLevel(slot(), level);
+            changed(MemberStore.LEVEL);
+        }
     }
 
     public void levelUp()
     {
-        int newLevel = level;
-        while (newLevel < parent.getLeveling().getMaxLevel() && this.xp >= maxXp(newLevel))
+        boolean leveled;
+        synchronized (store)
         {
-            this.xp -= maxXp(newLevel);
-            newLevel++;
+            leveled = applyLevelUp(slot());
+            if (leveled)
+                changed();
         }
+        if (leveled)
+            parent.requestRoleSync(getIdAsLong());
+    }
 
-        if (level != newLevel)
-        {
-            level = newLevel;
-            parent.getLeveling().syncRoles(getId());
-        }
+    private boolean applyLevelUp(int slot)
+    {
+        return applyLevelUp(store, slot, curve());
+    }
+
+    static boolean applyLevelUp(MemberStore store, int slot, XpCurve curve)
+    {
+        int level = store.getLevel(slot);
+        if (level >= curve.getMaxLevel())
+            return false;
+
+        // Resolve the new level from the total in one search, however many levels the XP covers
+        double total = curve.totalXp(level) + store.getXp(slot);
+        int newLevel = curve.levelOf(total);
+        if (newLevel <= level)
+            return false;
+        // Kept as increments, so the save doesn't overwrite XP another writer added
+        store.addXp(slot, (float) (total - curve.totalXp(newLevel)) - store.getXp(slot));
+        store.addLevel(slot, newLevel - level);
+        return true;
     }
 
-    public void daily()
+    public boolean claimDaily()
     {
-        lastDailyTime = LocalDateTime.now();
+        // Checked and taken under one lock, so two claims at once can't both get it
+        synchronized (store)
+        {
+            if (!hasDaily())
+                return false;
+            store.setLastDailyTime(slot(), clock.millis());
+            changed(MemberStore.LAST_DAILY_TIME);
+        }
         addCoins(getDailyCoins());
         addXp(getDailyXp());
+        return true;
     }
 
     public float getDailyCoins()
@@ -138,12 +358,20 @@ public class MemberData extends DiscordData implements ChildData<GuildData>
 
     public boolean hasDaily()
     {
-        return lastDailyTime == null || LocalDateTime.now().isAfter(lastDailyTime.plusDays(1));
+        // Compared as epoch millis on the same clock as cooldowns, so the host's zone doesn't shift it
+        synchronized (store)
+        {
+            long lastDailyTime = store.getLastDailyTime(slot());
+            return lastDailyTime == 0 || clock.millis() - lastDailyTime > TimeUnit.DAYS.toMillis(1);
+        }
     }
 
     public LocalDateTime getLastDailyTime()
     {
-        return lastDailyTime;
+        synchronized (store)
+        {
+            return fromEpoch(store.getLastDailyTime(slot()));
+        }
     }
 
     @Override
@@ -157,4 +385,4 @@ public class MemberData extends DiscordData implements ChildData<GuildData>
     {
         this.parent = parent;
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,10 @@
 package com.oopsjpeg.snubot.data.impl;
 
+import com.oopsjpeg.snubot.data.Changes;
 import com.oopsjpeg.snubot.data.ChildData;
 import com.oopsjpeg.snubot.data.DiscordData;
 import com.oopsjpeg.snubot.data.SaveData;
+import com.oopsjpeg.snubot.data.SaveMarker;
 import com.oopsjpeg.snubot.Snubot;
 import discord4j.core.object.entity.User;
 import reactor.core.publisher.Mono;
@@ -12,7 +14,8 @@ public class UserData extends DiscordData implements ChildData<Snubot>, SaveData
     private final Selections selections = new Selections();
 
     private transient Snubot parent;
-    private transient boolean markedForSave;
+    private final transient SaveMarker saveMarker = new SaveMarker();
+    private final transient Changes changes = new Changes(this);
 
     public UserData(final String id)
     {
@@ -29,6 +32,13 @@ public class UserData extends DiscordData implements ChildData<Snubot>, SaveData
         return (Selections) selections.parent(this);
     }
 
+    @Override
+    public void touch()
+    {
+        if (parent != null && parent.getJournalManager() != null)
+            parent.getJournalManager().touch(this);
+    }
+
     @Override
     public Snubot getParent()
     {
@@ -42,14 +52,14 @@ public class UserData extends DiscordData implements ChildData<Snubot>, SaveData
     }
 
     @Override
-    public boolean isMarkedForSave()
+    public SaveMarker getSaveMarker()
     {
-        return markedForSave;
+        return saveMarker;
     }
 
     @Override
-    public void setMarkedForSave(boolean markedForSave)
+    public Changes getChanges()
     {
-        this.markedForSave = markedForSave;
+        return changes;
     }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package com.oopsjpeg.snubot.data.impl;
+
+public class XpCurve
+{
+    public static final double DEFAULT_BASE = 220;
+    public static final double DEFAULT_MULTIPLIER = 90;
+    public static final double DEFAULT_EXPONENT = 1.06;
+    // Bounds the tables, which are allocated up to the max level
+    public static final int MAX_LEVEL = 1000;
+
+    private final double base;
+    private final double multiplier;
+    private final double exponent;
+    // XP needed to finish each level, and in total to reach it, up to the max level
+    private final int[] levelXp;
+    private final long[] totalXp;
+
+    public XpCurve(double base, double multiplier, double exponent, int maxLevel)
+    {
+        if (maxLevel < 0 || maxLevel > MAX_LEVEL)
+            throw new IllegalArgumentException("Max level " + maxLevel + " is outside of 0 to " + MAX_LEVEL);
+        this.base = base;
+        this.multiplier = multiplier;
+        this.exponent = exponent;
+
+        levelXp = new int[maxLevel + 1];
+        totalXp = new long[maxLevel + 1];
+        for (int level = 0; level <= maxLevel; level++)
+        {
+            levelXp[level] = compute(level);
+            if (level > 0)
+                totalXp[level] = totalXp[level - 1] + levelXp[level - 1];
+        }
+    }
+
+    private int compute(int level)
+    {
+        double xp = base + Math.pow(level * multiplier, exponent);
+        if (!(xp <= Integer.MAX_VALUE))
+            throw new ArithmeticException("Level " + level + " takes more than " + Integer.MAX_VALUE + " XP");
+        return (int) xp;
+    }
+
+    public static boolean fits(double base, double multiplier, double exponent)
+    {
+        // Levels only get steeper, so a curve that fits at the highest level fits at all of them
+        double xp = base + Math.pow(MAX_LEVEL * multiplier, exponent);
+        return xp <= Integer.MAX_VALUE;
+    }
+
+    public int maxXp(int level)
+    {
+        return level >= 0 && level < levelXp.length ? levelXp[level] : compute(level);
+    }
+
+    public long totalXp(int level)
+    {
+        if (level >= 0 && level < totalXp.length)
+            return totalXp[level];
+        long total = totalXp[totalXp.length - 1];
+        for (int i = totalXp.length - 1; i < level; i++)
+            total += compute(i);
+        return total;
+    }
+
+    public int levelOf(double total)
+    {
+        // Highest level whose total is reached, capped at the max level
+        int low = 0;
+        int high = totalXp.length - 1;
+        while (low < high)
+        {
+            int mid = (low + high + 1) >>> 1;
+            if (totalXp[mid] <= total)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+
+    public int getMaxLevel()
+    {
+        return levelXp.length - 1;
+    }
+
+    public double getBase()
+    {
+        return base;
+    }
+
+    public double getMultiplier()
+    {
+        return multiplier;
+    }
+
+    public double getExponent()
+    {
+        return exponent;
+    }
+}
@@ -0,0 +1,113 @@
+package com.oopsjpeg.snubot.data.store;
+
+import java.util.Arrays;
+
+public class HeapMemberStore extends MemberStore
+{
+    private long[] ids;
+    private float[] coins;
+    private float[] xp;
+    private int[] levels;
+    private long[] lastMessageTimes;
+    private long[] lastDailyTimes;
+
+    public HeapMemberStore()
+    {
+        this(4);
+    }
+
+    public HeapMemberStore(int capacity)
+    {
+        ids = new long[capacity];
+        coins = new float[capacity];
+        xp = new float[capacity];
+        levels = new int[capacity];
+        lastMessageTimes = new long[capacity];
+        lastDailyTimes = new long[capacity];
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity)
+    {
+        if (capacity <= ids.length) return;
+        int length = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, length);
+        coins = Arrays.copyOf(coins, length);
+        xp = Arrays.copyOf(xp, length);
+        levels = Arrays.copyOf(levels, length);
+        lastMessageTimes = Arrays.copyOf(lastMessageTimes, length);
+        lastDailyTimes = Arrays.copyOf(lastDailyTimes, length);
+    }
+
+    @Override
+    public long getId(int slot)
+    {
+        return ids[slot];
+    }
+
+    @Override
+    protected void setId(int slot, long id)
+    {
+        ids[slot] = id;
+    }
+
+    @Override
+    public float getCoins(int slot)
+    {
+        return coins[slot];
+    }
+
+    @Override
+    public void setCoins(int slot, float coins)
+    {
+        this.coins[slot] = coins;
+    }
+
+    @Override
+    public float getXp(int slot)
+    {
+        return xp[slot];
+    }
+
+    @Override
+    public void setXp(int slot, float xp)
+    {
+        this.xp[slot] = xp;
+    }
+
+    @Override
+    public int getLevel(int slot)
+    {
+        return levels[slot];
+    }
+
+    @Override
+    public void setLevel(int slot, int level)
+    {
+        levels[slot] = level;
+    }
+
+    @Override
+    public long getLastMessageTime(int slot)
+    {
+        return lastMessageTimes[slot];
+    }
+
+    @Override
+    public void setLastMessageTime(int slot, long time)
+    {
+        lastMessageTimes[slot] = time;
+    }
+
+    @Override
+    public long getLastDailyTime(int slot)
+    {
+        return lastDailyTimes[slot];
+    }
+
+    @Override
+    public void setLastDailyTime(int slot, long time)
+    {
+        lastDailyTimes[slot] = time;
+    }
+}
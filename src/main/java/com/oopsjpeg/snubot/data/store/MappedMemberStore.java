@@ -0,0 +1,206 @@
+package com.oopsjpeg.snubot.data.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Members as fixed-width records in a memory-mapped file, which outlives the process
+public class MappedMemberStore extends MemberStore
+{
+    private static final int MAGIC = 0x534E554D;
+    private static final int VERSION = 1;
+
+    private static final int HEADER = 16;
+    private static final int RECORD = 40;
+
+    private static final int ID = 0;
+    private static final int COINS = 8;
+    private static final int XP = 12;
+    private static final int LEVEL = 16;
+    // Was padding, so stores written before it have every member saved
+    private static final int FLAGS = 20;
+    private static final int LAST_MESSAGE_TIME = 24;
+    private static final int LAST_DAILY_TIME = 32;
+
+    private static final int UNSAVED = 1;
+
+    private final Path file;
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int capacity;
+
+    public MappedMemberStore(Path file) throws IOException
+    {
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            long size = channel.size();
+            if (size == 0)
+            {
+                map(64);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+            }
+            else
+            {
+                if (size < HEADER)
+                    throw new IOException("Member store " + file.getFileName() + " is too short");
+                map((int) ((size - HEADER) / RECORD));
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION)
+                    throw new IOException("Unknown member store format in " + file.getFileName());
+                restore(capacity);
+            }
+        }
+        catch (IOException | RuntimeException error)
+        {
+            channel.close();
+            throw error;
+        }
+    }
+
+    private void map(int capacity) throws IOException
+    {
+        // Mapping past the end grows the file
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity * RECORD);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.capacity = capacity;
+    }
+
+    private static int offset(int slot)
+    {
+        return HEADER + slot * RECORD;
+    }
+
+    @Override
+    protected void ensureCapacity(int capacity)
+    {
+        if (capacity <= this.capacity) return;
+        try
+        {
+            map(Math.max(capacity, this.capacity * 2));
+        }
+        catch (IOException error)
+        {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    @Override
+    public synchronized void force()
+    {
+        buffer.force();
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        try
+        {
+            buffer.force();
+            channel.close();
+        }
+        catch (IOException error)
+        {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    @Override
+    public boolean isUnsaved(int slot)
+    {
+        return (buffer.getInt(offset(slot) + FLAGS) & UNSAVED) != 0;
+    }
+
+    @Override
+    protected void setUnsaved(int slot, boolean unsaved)
+    {
+        int offset = offset(slot) + FLAGS;
+        int flags = buffer.getInt(offset);
+        int updated = unsaved ? flags | UNSAVED : flags & ~UNSAVED;
+        // Skips the write when nothing changes, so the page isn't dirtied on every reward
+        if (updated != flags)
+            buffer.putInt(offset, updated);
+    }
+
+    @Override
+    public long getId(int slot)
+    {
+        return buffer.getLong(offset(slot) + ID);
+    }
+
+    @Override
+    protected void setId(int slot, long id)
+    {
+        buffer.putLong(offset(slot) + ID, id);
+    }
+
+    @Override
+    public float getCoins(int slot)
+    {
+        return buffer.getFloat(offset(slot) + COINS);
+    }
+
+    @Override
+    public void setCoins(int slot, float coins)
+    {
+        buffer.putFloat(offset(slot) + COINS, coins);
+    }
+
+    @Override
+    public float getXp(int slot)
+    {
+        return buffer.getFloat(offset(slot) + XP);
+    }
+
+    @Override
+    public void setXp(int slot, float xp)
+    {
+        buffer.putFloat(offset(slot) + XP, xp);
+    }
+
+    @Override
+    public int getLevel(int slot)
+    {
+        return buffer.getInt(offset(slot) + LEVEL);
+    }
+
+    @Override
+    public void setLevel(int slot, int level)
+    {
+        buffer.putInt(offset(slot) + LEVEL, level);
+    }
+
+    @Override
+    public long getLastMessageTime(int slot)
+    {
+        return buffer.getLong(offset(slot) + LAST_MESSAGE_TIME);
+    }
+
+    @Override
+    public void setLastMessageTime(int slot, long time)
+    {
+        buffer.putLong(offset(slot) + LAST_MESSAGE_TIME, time);
+    }
+
+    @Override
+    public long getLastDailyTime(int slot)
+    {
+        return buffer.getLong(offset(slot) + LAST_DAILY_TIME);
+    }
+
+    @Override
+    public void setLastDailyTime(int slot, long time)
+    {
+        buffer.putLong(offset(slot) + LAST_DAILY_TIME, time);
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+}
@@ -0,0 +1,318 @@
+package com.oopsjpeg.snubot.data.store;
+
+import com.oopsjpeg.snubot.util.LongIntMap;
+import com.oopsjpeg.snubot.util.LongSet;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Member stats laid out by slot instead of one object per member.
+// Column accessors expect the caller to hold the store's lock.
+public abstract class MemberStore
+{
+    // Fields to write as they are on the next save, rather than as increments
+    public static final int COINS = 1;
+    public static final int XP = 2;
+    public static final int LEVEL = 4;
+    public static final int LAST_DAILY_TIME = 8;
+    public static final int ALL = COINS | XP | LEVEL | LAST_DAILY_TIME;
+
+    private final LongIntMap slotMap = new LongIntMap();
+    // Changed since the last save, and since the last journal commit
+    private final BitSet dirtySet = new BitSet();
+    private final BitSet journalSet = new BitSet();
+    // Removed since the last save, and since the last journal commit, so their documents are deleted too
+    private final LongSet removedSet = new LongSet();
+    private final LongSet journalRemovedSet = new LongSet();
+
+    // What each slot has gained since its last save, so counters go out as $inc and don't overwrite other writers
+    private double[] coinDeltas = new double[0];
+    private double[] xpDeltas = new double[0];
+    private int[] levelDeltas = new int[0];
+    private byte[] setFields = new byte[0];
+
+    private int[] freeSlots = new int[4];
+    private int freeCount;
+    private int slotCount;
+
+    public synchronized int slotOf(long id)
+    {
+        return slotMap.get(id);
+    }
+
+    public synchronized int add(long id)
+    {
+        int slot = slotMap.get(id);
+        if (slot != LongIntMap.MISSING)
+            return slot;
+
+        // Reuse the slots of removed members before growing
+        if (freeCount > 0)
+            slot = freeSlots[--freeCount];
+        else
+        {
+            slot = slotCount++;
+            ensureCapacity(slotCount);
+            ensurePending(slotCount);
+        }
+        // Added back before its removal was written, so it's written whole instead
+        removedSet.remove(id);
+        journalRemovedSet.remove(id);
+        setId(slot, id);
+        setCoins(slot, 0);
+        setXp(slot, 0);
+        setLevel(slot, 0);
+        setLastMessageTime(slot, 0);
+        setLastDailyTime(slot, 0);
+        setUnsaved(slot, false);
+        slotMap.put(id, slot);
+        return slot;
+    }
+
+    public synchronized boolean remove(long id)
+    {
+        int slot = slotMap.remove(id);
+        if (slot == LongIntMap.MISSING)
+            return false;
+        setId(slot, 0);
+        dirtySet.clear(slot);
+        journalSet.clear(slot);
+        clearPending(slot);
+        free(slot);
+        removedSet.add(id);
+        journalRemovedSet.add(id);
+        return true;
+    }
+
+    private void ensurePending(int capacity)
+    {
+        if (capacity <= setFields.length) return;
+        int length = Math.max(capacity, setFields.length + (setFields.length >> 1));
+        coinDeltas = Arrays.copyOf(coinDeltas, length);
+        xpDeltas = Arrays.copyOf(xpDeltas, length);
+        levelDeltas = Arrays.copyOf(levelDeltas, length);
+        setFields = Arrays.copyOf(setFields, length);
+    }
+
+    public void clearPending(int slot)
+    {
+        coinDeltas[slot] = 0;
+        xpDeltas[slot] = 0;
+        levelDeltas[slot] = 0;
+        setFields[slot] = 0;
+    }
+
+    private void free(int slot)
+    {
+        if (freeCount == freeSlots.length)
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = slot;
+    }
+
+    public synchronized int size()
+    {
+        return slotMap.size();
+    }
+
+    public synchronized int[] slots()
+    {
+        int[] slots = new int[slotMap.size()];
+        int n = 0;
+        for (int slot = 0; slot < slotCount; slot++)
+            if (getId(slot) != 0)
+                slots[n++] = slot;
+        return slots;
+    }
+
+    public synchronized void markDirty(int slot)
+    {
+        dirtySet.set(slot);
+        journalSet.set(slot);
+        setUnsaved(slot, true);
+    }
+
+    public synchronized void markDirty(long id)
+    {
+        int slot = slotMap.get(id);
+        if (slot != LongIntMap.MISSING)
+            markDirty(slot);
+    }
+
+    public synchronized void markSet(int slot, int fields)
+    {
+        setFields[slot] |= fields;
+        markDirty(slot);
+    }
+
+    public synchronized void markSet(long id, int fields)
+    {
+        int slot = slotMap.get(id);
+        if (slot != LongIntMap.MISSING)
+            markSet(slot, fields);
+    }
+
+    public synchronized void markJournal(long id)
+    {
+        int slot = slotMap.get(id);
+        if (slot != LongIntMap.MISSING)
+            journalSet.set(slot);
+    }
+
+    public synchronized void markSaved(long id)
+    {
+        // Changed again since the write was taken, so it's still unsaved
+        int slot = slotMap.get(id);
+        if (slot != LongIntMap.MISSING && !dirtySet.get(slot))
+            setUnsaved(slot, false);
+    }
+
+    public synchronized void markRemoved(long id)
+    {
+        if (slotMap.get(id) == LongIntMap.MISSING)
+            removedSet.add(id);
+    }
+
+    public synchronized void markJournalRemoved(long id)
+    {
+        if (slotMap.get(id) == LongIntMap.MISSING)
+            journalRemovedSet.add(id);
+    }
+
+    public synchronized boolean hasDirty()
+    {
+        return !dirtySet.isEmpty() || !removedSet.isEmpty();
+    }
+
+    public synchronized int[] drainDirty()
+    {
+        int[] slots = dirtySet.stream().toArray();
+        dirtySet.clear();
+        return slots;
+    }
+
+    public synchronized int[] drainJournal()
+    {
+        int[] slots = journalSet.stream().toArray();
+        journalSet.clear();
+        return slots;
+    }
+
+    public synchronized long[] drainRemoved()
+    {
+        long[] ids = removedSet.toArray();
+        removedSet.clear();
+        return ids;
+    }
+
+    public synchronized long[] drainJournalRemoved()
+    {
+        long[] ids = journalRemovedSet.toArray();
+        journalRemovedSet.clear();
+        return ids;
+    }
+
+    protected void restore(int capacity)
+    {
+        // Picks the members back up from a store that outlived the last run
+        for (int slot = 0; slot < capacity; slot++)
+            if (getId(slot) != 0)
+            {
+                slotMap.put(getId(slot), slot);
+                slotCount = slot + 1;
+            }
+        ensurePending(slotCount);
+        for (int slot = 0; slot < slotCount; slot++)
+            if (getId(slot) == 0)
+                free(slot);
+            else if (isUnsaved(slot))
+            {
+                // What it gained is gone with the last run, so the values it ended up with are written whole
+                setFields[slot] = ALL;
+                dirtySet.set(slot);
+                journalSet.set(slot);
+            }
+    }
+
+    public void force()
+    {
+    }
+
+    public void close()
+    {
+    }
+
+    // Whether a slot has changes that never reached Mongo, kept by stores that outlive the process
+    public boolean isUnsaved(int slot)
+    {
+        return false;
+    }
+
+    protected void setUnsaved(int slot, boolean unsaved)
+    {
+    }
+
+    protected abstract void ensureCapacity(int capacity);
+
+    public abstract long getId(int slot);
+
+    protected abstract void setId(int slot, long id);
+
+    public abstract float getCoins(int slot);
+
+    public abstract void setCoins(int slot, float coins);
+
+    public abstract float getXp(int slot);
+
+    public abstract void setXp(int slot, float xp);
+
+    public abstract int getLevel(int slot);
+
+    public abstract void setLevel(int slot, int level);
+
+    // Times are epoch millis, with 0 for never
+    public abstract long getLastMessageTime(int slot);
+
+    public abstract void setLastMessageTime(int slot, long time);
+
+    public abstract long getLastDailyTime(int slot);
+
+    public abstract void setLastDailyTime(int slot, long time);
+
+    public void addCoins(int slot, float coins)
+    {
+        setCoins(slot, getCoins(slot) + coins);
+        coinDeltas[slot] += coins;
+    }
+
+    public void addXp(int slot, float xp)
+    {
+        setXp(slot, getXp(slot) + xp);
+        xpDeltas[slot] += xp;
+    }
+
+    public void addLevel(int slot, int levels)
+    {
+        setLevel(slot, getLevel(slot) + levels);
+        levelDeltas[slot] += levels;
+    }
+
+    public double getCoinsDelta(int slot)
+    {
+        return coinDeltas[slot];
+    }
+
+    public double getXpDelta(int slot)
+    {
+        return xpDeltas[slot];
+    }
+
+    public int getLevelDelta(int slot)
+    {
+        return levelDeltas[slot];
+    }
+
+    public int getSetFields(int slot)
+    {
+        return setFields[slot];
+    }
+}
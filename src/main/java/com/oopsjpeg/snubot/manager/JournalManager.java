@@ -0,0 +1,332 @@
+package com.oopsjpeg.snubot.manager;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
+import com.oopsjpeg.snubot.Manager;
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.data.SaveData;
+import com.oopsjpeg.snubot.data.codec.CodecUtil;
+import com.oopsjpeg.snubot.data.codec.SnubotCodecProvider;
+import com.oopsjpeg.snubot.data.impl.GuildData;
+import com.oopsjpeg.snubot.data.impl.MemberData;
+import com.oopsjpeg.snubot.data.impl.UserData;
+import com.oopsjpeg.snubot.data.store.MemberStore;
+import com.oopsjpeg.snubot.react.ReactMessage;
+import org.bson.*;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.conversions.Bson;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class JournalManager implements Manager
+{
+    private static final String SUFFIX = ".journal";
+
+    private final Snubot parent;
+    private final Path directory;
+    private final long syncInterval;
+
+    // Data changed since the last commit, by identity since member IDs repeat across guilds
+    private final Set<SaveData> touchedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Guilds with changed members, which keep track of the members themselves
+    private final Set<GuildData> memberTouchedSet = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final List<BsonDocument> pendingList = new ArrayList<>();
+
+    private long segment;
+    private FileChannel channel;
+
+    public JournalManager(Snubot parent, String directory, long syncInterval)
+    {
+        this.parent = parent;
+        this.directory = Paths.get(directory);
+        this.syncInterval = syncInterval;
+    }
+
+    public void start()
+    {
+        try
+        {
+            Files.createDirectories(directory);
+            replay();
+            segment = listSegments().stream().mapToLong(Long::longValue).max().orElse(0) + 1;
+            open();
+        }
+        catch (IOException error)
+        {
+            throw new UncheckedIOException(error);
+        }
+
+        // Group everything changed within an interval into one write and one sync
+        Snubot.SCHEDULER.scheduleWithFixedDelay(this::commit, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    public void touch(SaveData data)
+    {
+        synchronized (touchedSet)
+        {
+            touchedSet.add(data);
+        }
+    }
+
+    public void touchMembers(GuildData data)
+    {
+        synchronized (touchedSet)
+        {
+            memberTouchedSet.add(data);
+        }
+    }
+
+    public void remove(SaveData data)
+    {
+        synchronized (touchedSet)
+        {
+            touchedSet.remove(data);
+        }
+        synchronized (this)
+        {
+            pendingList.add(entry(data).append("d", BsonBoolean.TRUE));
+        }
+        // Sync before the document is deleted, or a replay could bring it back
+        commit();
+    }
+
+    public synchronized void commit()
+    {
+        List<SaveData> touchedList;
+        List<GuildData> memberTouchedList;
+        synchronized (touchedSet)
+        {
+            touchedList = new ArrayList<>(touchedSet);
+            touchedSet.clear();
+            memberTouchedList = new ArrayList<>(memberTouchedSet);
+            memberTouchedSet.clear();
+        }
+        if (touchedList.isEmpty() && memberTouchedList.isEmpty() && pendingList.isEmpty()) return;
+
+        // Journal whole documents, so replaying an entry twice does no harm
+        List<BsonDocument> entryList = new ArrayList<>(pendingList);
+        pendingList.clear();
+        for (SaveData data : touchedList)
+            synchronized (data)
+            {
+                entryList.add(entry(data).append("r", CodecUtil.toDocument(data)));
+            }
+        List<MemberData> memberList = new ArrayList<>();
+        Map<GuildData, long[]> removedMap = new IdentityHashMap<>();
+        for (GuildData guild : memberTouchedList)
+        {
+            MemberStore store = guild.getMemberStore();
+            synchronized (store)
+            {
+                for (int slot : store.drainJournal())
+                {
+                    MemberData member = guild.getMemberDataAt(slot);
+                    memberList.add(member);
+                    entryList.add(entry(member).append("r", CodecUtil.toDocument(member)));
+                }
+                long[] removed = store.drainJournalRemoved();
+                if (removed.length > 0)
+                    removedMap.put(guild, removed);
+                for (long id : removed)
+                    entryList.add(entry(parent.getMongoManager().getMemberDataCollection(), MongoManager.memberFilter(guild.getId(), Long.toString(id)))
+                            .append("d", BsonBoolean.TRUE));
+            }
+        }
+
+        try
+        {
+            List<ByteBuffer> bufferList = entryList.stream()
+                    .map(e -> new RawBsonDocument(e, new BsonDocumentCodec()).getByteBuffer().asNIO())
+                    .collect(Collectors.toList());
+            for (ByteBuffer buffer : bufferList)
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            channel.force(false);
+        }
+        catch (IOException error)
+        {
+            // Keep the data around so the next commit tries again
+            Snubot.LOGGER.error("Failed to write " + entryList.size() + " journal entries: " + error.getMessage());
+            synchronized (touchedSet)
+            {
+                touchedSet.addAll(touchedList);
+                memberTouchedSet.addAll(memberTouchedList);
+            }
+            memberList.forEach(m -> m.getParent().getMemberStore().markJournal(m.getIdAsLong()));
+            removedMap.forEach((guild, removed) ->
+            {
+                for (long id : removed)
+                    guild.getMemberStore().markJournalRemoved(id);
+            });
+        }
+    }
+
+    public synchronized long rotate()
+    {
+        // Commit and start a new segment, returning the one that was closed
+        commit();
+        long sealed = segment;
+        try
+        {
+            channel.close();
+            segment++;
+            open();
+        }
+        catch (IOException error)
+        {
+            throw new UncheckedIOException(error);
+        }
+        return sealed;
+    }
+
+    public void truncate(long sealed)
+    {
+        // Everything up to the sealed segment is in Mongo now
+        try
+        {
+            for (long s : listSegments())
+                if (s <= sealed)
+                    Files.deleteIfExists(segmentPath(s));
+        }
+        catch (IOException error)
+        {
+            Snubot.LOGGER.warn("Failed to truncate journal: " + error.getMessage());
+        }
+    }
+
+    private void replay() throws IOException
+    {
+        List<Long> segmentList = listSegments();
+        if (segmentList.isEmpty()) return;
+
+        // Only the last entry of each document matters
+        Map<String, BsonDocument> entryMap = new LinkedHashMap<>();
+        for (long s : segmentList)
+            for (BsonDocument entry : read(segmentPath(s)))
+                entryMap.put(entry.getString("c").getValue() + entry.getDocument("f").toJson(), entry);
+
+        Map<String, List<WriteModel<BsonDocument>>> modelMap = new LinkedHashMap<>();
+        for (BsonDocument entry : entryMap.values())
+            modelMap.computeIfAbsent(entry.getString("c").getValue(), c -> new ArrayList<>()).add(entry.containsKey("d")
+                    ? new DeleteOneModel<>(entry.getDocument("f"))
+                    : new ReplaceOneModel<>(entry.getDocument("f"), entry.getDocument("r"), new ReplaceOptions().upsert(true)));
+
+        Snubot.LOGGER.info("Replaying " + entryMap.size() + " journal entries from " + segmentList.size() + " segment(s).");
+        try
+        {
+            MongoManager mongo = parent.getMongoManager();
+            for (Map.Entry<String, List<WriteModel<BsonDocument>>> e : modelMap.entrySet())
+            {
+                List<WriteModel<BsonDocument>> modelList = e.getValue();
+                MongoCollection<BsonDocument> collection = mongo.getDatabase().getCollection(e.getKey(), BsonDocument.class);
+                for (int i = 0; i < modelList.size(); i += mongo.getBatchSize())
+                    collection.bulkWrite(modelList.subList(i, Math.min(modelList.size(), i + mongo.getBatchSize())));
+            }
+        }
+        catch (MongoException error)
+        {
+            // Starting without these would lose them for good
+            throw new IllegalStateException("Failed to replay journal", error);
+        }
+
+        for (long s : segmentList)
+            Files.delete(segmentPath(s));
+    }
+
+    private List<BsonDocument> read(Path path) throws IOException
+    {
+        byte[] bytes = Files.readAllBytes(path);
+        List<BsonDocument> entryList = new ArrayList<>();
+        int position = 0;
+        while (position + 4 <= bytes.length)
+        {
+            // Documents are prefixed with their own length
+            int length = ByteBuffer.wrap(bytes, position, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+            if (length < 5 || position + length > bytes.length)
+            {
+                Snubot.LOGGER.warn("Dropping torn entry at the end of " + path.getFileName() + ".");
+                break;
+            }
+            entryList.add(new RawBsonDocument(bytes, position, length));
+            position += length;
+        }
+        return entryList;
+    }
+
+    private BsonDocument entry(SaveData data)
+    {
+        MongoManager mongo = parent.getMongoManager();
+        if (data instanceof GuildData)
+            return entry(mongo.getGuildDataCollection(), MongoManager.idFilter((GuildData) data));
+        if (data instanceof UserData)
+            return entry(mongo.getUserDataCollection(), MongoManager.idFilter((UserData) data));
+        if (data instanceof ReactMessage)
+            return entry(mongo.getReactMessageCollection(), MongoManager.idFilter((ReactMessage) data));
+        throw new IllegalArgumentException("No collection for " + data.getClass().getSimpleName());
+    }
+
+    private BsonDocument entry(MemberData data)
+    {
+        return entry(parent.getMongoManager().getMemberDataCollection(), MongoManager.memberFilter(data));
+    }
+
+    private BsonDocument entry(MongoCollection<?> collection, Bson filter)
+    {
+        return new BsonDocument("c", new BsonString(collection.getNamespace().getCollectionName()))
+                .append("f", filter.toBsonDocument(BsonDocument.class, SnubotCodecProvider.REGISTRY));
+    }
+
+    private void open() throws IOException
+    {
+        channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(long segment)
+    {
+        return directory.resolve(segment + SUFFIX);
+    }
+
+    private List<Long> listSegments() throws IOException
+    {
+        try (Stream<Path> stream = Files.list(directory))
+        {
+            return stream.map(p -> p.getFileName().toString())
+                    .filter(n -> n.endsWith(SUFFIX) && n.substring(0, n.length() - SUFFIX.length()).matches("\\d+"))
+                    .map(n -> Long.parseLong(n.substring(0, n.length() - SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public Snubot getParent()
+    {
+        return parent;
+    }
+
+    public Path getDirectory()
+    {
+        return directory;
+    }
+
+    public long getSyncInterval()
+    {
+        return syncInterval;
+    }
+}
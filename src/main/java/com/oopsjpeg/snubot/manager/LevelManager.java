@@ -4,46 +4,325 @@ import com.oopsjpeg.snubot.Manager;
 import com.oopsjpeg.snubot.Snubot;
 import com.oopsjpeg.snubot.data.impl.GuildData;
 import com.oopsjpeg.snubot.data.impl.MemberData;
+import com.oopsjpeg.snubot.util.LongIntMap;
+import com.oopsjpeg.snubot.util.LongObjectMap;
+import com.oopsjpeg.snubot.util.LongSet;
 import discord4j.core.GatewayDiscordClient;
 import discord4j.core.event.domain.message.MessageCreateEvent;
-import discord4j.core.object.entity.Guild;
-import discord4j.core.object.entity.Message;
 import discord4j.core.object.entity.User;
-import discord4j.core.object.entity.channel.MessageChannel;
+
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class LevelManager implements Manager
 {
+    private static final int PARTITIONS = Runtime.getRuntime().availableProcessors();
+    private static final int RING_SIZE = 1 << 14;
+    private static final int BATCH_SIZE = 1024;
+    private static final long FOLD_INTERVAL = 100;
+    private static final int LOAD_THREADS = 2;
+    // How long rewards wait on a guild that won't load, and how many of them, before they're dropped
+    private static final int MAX_PENDING = 4096;
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+    private static final long MAX_PENDING_AGE = TimeUnit.MINUTES.toMillis(1);
+
     private final Snubot parent;
+    // Guilds are split across partitions, each folded in by one task at a time
+    private final Partition[] partitions = new Partition[PARTITIONS];
+    // Folds and guild loads get threads of their own, so they neither wait on nor hold up the shared scheduler
+    private final ScheduledExecutorService folder = Executors.newScheduledThreadPool(PARTITIONS, threads("level-fold-"));
+    private final ExecutorService loader = Executors.newFixedThreadPool(LOAD_THREADS, threads("level-load-"));
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong folded = new AtomicLong();
+    private volatile long lastFoldTime;
+    private volatile long maxFoldTime;
 
     public LevelManager(Snubot parent)
     {
         this.parent = parent;
+        for (int i = 0; i < PARTITIONS; i++)
+            partitions[i] = new Partition();
+    }
+
+    private static ThreadFactory threads(String name)
+    {
+        AtomicInteger count = new AtomicInteger();
+        return r ->
+        {
+            Thread thread = new Thread(r, name + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     public void onMessage(MessageCreateEvent event)
     {
-        GatewayDiscordClient client = event.getClient();
-        Message message = event.getMessage();
-        MessageChannel channel = message.getChannel().block();
-        Guild guild = message.getGuild().block();
-        User author = message.getAuthor().orElse(null);
+        // Everything needed is already on the event, so this only queues the reward
+        long guildId = event.getGuildId().map(id -> id.asLong()).orElse(0L);
+        User author = event.getMessage().getAuthor().orElse(null);
+        if (guildId == 0 || author == null || author.isBot())
+            return;
+        publish(guildId, author.getId().asLong(), MemberData.getClock().millis(), MemberData.rollMessageCoins(), MemberData.rollMessageXp());
+    }
+
+    public boolean publish(long guildId, long memberId, long time, float coins, float xp)
+    {
+        if (partitionOf(guildId).ring.offer(guildId, memberId, time, coins, xp))
+            return true;
+        // Dropping a message's reward beats holding up the event threads
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    private Partition partitionOf(long guildId)
+    {
+        long hash = guildId * 0x9E3779B97F4A7C15L;
+        return partitions[(int) ((hash >>> 33) % PARTITIONS)];
+    }
+
+    private void fold(Partition partition)
+    {
+        folded.addAndGet(foldPending(partition));
+        // Only what was queued when the fold started, so a steady stream of rewards can't keep it going
+        int remaining = partition.ring.size();
+        int count;
+        while (remaining > 0 && (count = partition.ring.poll(partition.guildIds, partition.memberIds, partition.times, partition.coins, partition.xp)) > 0)
+        {
+            remaining -= count;
+            long start = System.nanoTime();
+            folded.addAndGet(foldBatch(partition, count));
+            long time = System.nanoTime() - start;
+            lastFoldTime = time;
+            if (time > maxFoldTime)
+                maxFoldTime = time;
+        }
+    }
+
+    private int foldBatch(Partition partition, int count)
+    {
+        // Group the batch by guild in two passes, so each guild is locked and marked once
+        LongIntMap groupMap = partition.groupMap;
+        groupMap.clear();
+        int groups = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int group = groupMap.get(partition.guildIds[i]);
+            if (group == LongIntMap.MISSING)
+            {
+                group = groups++;
+                groupMap.put(partition.guildIds[i], group);
+                partition.groupGuildIds[group] = partition.guildIds[i];
+                partition.groupEnds[group] = 0;
+            }
+            partition.groupOf[i] = group;
+            partition.groupEnds[group]++;
+        }
+        for (int group = 0, offset = 0; group < groups; group++)
+        {
+            partition.groupStarts[group] = offset;
+            offset += partition.groupEnds[group];
+            partition.groupEnds[group] = partition.groupStarts[group];
+        }
+        for (int i = 0; i < count; i++)
+        {
+            int j = partition.groupEnds[partition.groupOf[i]]++;
+            partition.groupMemberIds[j] = partition.memberIds[i];
+            partition.groupTimes[j] = partition.times[i];
+            partition.groupCoins[j] = partition.coins[i];
+            partition.groupXp[j] = partition.xp[i];
+        }
+
+        int rewarded = 0;
+        for (int group = 0; group < groups; group++)
+        {
+            long guildId = partition.groupGuildIds[group];
+            int from = partition.groupStarts[group];
+            int to = partition.groupEnds[group];
+            // Rewards already waiting on this guild go first, so its cooldowns see them in order
+            Pending pending = partition.pendingMap.get(guildId);
+            if (pending != null)
+            {
+                pending.addAll(partition, from, to);
+                continue;
+            }
+            String key = partition.keyOf(guildId);
+            // Pinned first, so the guild can't be evicted between the lookup and the reward
+            parent.getGuildDataCache().pin(key);
+            try
+            {
+                GuildData data = parent.getGuildDataCache().getIfPresent(key);
+                if (data == null)
+                {
+                    // Loading can go to Mongo, so it happens elsewhere while the rewards wait with the partition
+                    pending = new Pending(guildId, System.currentTimeMillis());
+                    partition.pendingMap.put(guildId, pending);
+                    pending.addAll(partition, from, to);
+                    load(partition, pending);
+                    continue;
+                }
+                // One guild failing leaves the rest of the batch to be folded
+                data.reward(partition.groupMemberIds, partition.groupTimes, partition.groupCoins, partition.groupXp, from, to);
+                rewarded += to - from;
+            }
+            catch (RuntimeException error)
+            {
+                Snubot.LOGGER.warn("Failed to fold " + (to - from) + " message reward(s) in guild ID " + guildId + ": " + error.getMessage());
+            }
+            finally
+            {
+                parent.getGuildDataCache().unpin(key);
+            }
+        }
+        return rewarded;
+    }
 
-        if (author != null && guild != null && !author.isBot())
+    private int foldPending(Partition partition)
+    {
+        if (partition.pendingMap.isEmpty())
+            return 0;
+        int rewarded = 0;
+        long now = System.currentTimeMillis();
+        for (Pending pending : partition.pendingMap.values())
         {
-            GuildData guildData = parent.getOrAddGuildData(guild);
-            if (guildData != null)
+            String key = partition.keyOf(pending.guildId);
+            parent.getGuildDataCache().pin(key);
+            try
+            {
+                GuildData data = parent.getGuildDataCache().getIfPresent(key);
+                if (data != null)
+                {
+                    partition.pendingMap.remove(pending.guildId);
+                    data.reward(pending.memberIds, pending.times, pending.coins, pending.xp, 0, pending.count);
+                    rewarded += pending.count;
+                }
+                else if (pending.failures.get() >= MAX_LOAD_ATTEMPTS || now - pending.since > MAX_PENDING_AGE)
+                {
+                    // The guild isn't coming, so its rewards stop taking up the partition
+                    partition.pendingMap.remove(pending.guildId);
+                    dropped.addAndGet(pending.count);
+                    Snubot.LOGGER.warn("Dropped " + pending.count + " message reward(s) in guild ID " + pending.guildId
+                            + " after it failed to load " + pending.failures.get() + " time(s).");
+                }
+                else
+                    load(partition, pending);
+            }
+            catch (RuntimeException error)
+            {
+                partition.pendingMap.remove(pending.guildId);
+                Snubot.LOGGER.warn("Failed to fold " + pending.count + " message reward(s) in guild ID " + pending.guildId + ": " + error.getMessage());
+            }
+            finally
             {
-                MemberData memberData = guildData.getOrAddMemberData(author);
-                // Give message rewards if possible
-                if (memberData.message()) guildData.markForSave();
+                parent.getGuildDataCache().unpin(key);
             }
         }
+        return rewarded;
+    }
+
+    private void load(Partition partition, Pending pending)
+    {
+        long guildId = pending.guildId;
+        if (!partition.loadingSet.add(guildId))
+            return;
+        String key = partition.keyOf(guildId);
+        try
+        {
+            CompletableFuture.runAsync(() -> parent.getOrAddGuildData(key), loader).whenComplete((v, error) ->
+            {
+                partition.loadingSet.remove(guildId);
+                if (error != null)
+                {
+                    // Tried again on the next fold, until it's failed too many times
+                    pending.failures.incrementAndGet();
+                    Snubot.LOGGER.warn("Failed to load guild ID " + guildId + " for message rewards: " + error.getMessage());
+                }
+            });
+        }
+        catch (RejectedExecutionException error)
+        {
+            // Shutting down, so the rewards wait with nothing left to fold them
+            partition.loadingSet.remove(guildId);
+        }
+    }
+
+    public void shutdown()
+    {
+        // Fold what's already queued one last time, so the final save has it
+        folder.shutdown();
+        loader.shutdown();
+        try
+        {
+            folder.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException error)
+        {
+            Thread.currentThread().interrupt();
+        }
+        foldAll();
+    }
+
+    void foldAll()
+    {
+        for (Partition partition : partitions)
+            synchronized (partition)
+            {
+                fold(partition);
+            }
     }
 
     @Override
     public void register(GatewayDiscordClient gateway)
     {
         gateway.on(MessageCreateEvent.class).subscribe(this::onMessage);
+        // A fixed delay keeps each partition down to one consumer
+        for (Partition partition : partitions)
+            folder.scheduleWithFixedDelay(() ->
+            {
+                synchronized (partition)
+                {
+                    fold(partition);
+                }
+            }, FOLD_INTERVAL, FOLD_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    public int getQueueDepth()
+    {
+        int depth = 0;
+        for (Partition partition : partitions)
+            depth += partition.ring.size();
+        return depth;
+    }
+
+    public int getPendingCount()
+    {
+        int count = 0;
+        for (Partition partition : partitions)
+            for (Pending pending : partition.pendingMap.values())
+                count += pending.count;
+        return count;
+    }
+
+    public long getDroppedCount()
+    {
+        return dropped.get();
+    }
+
+    public long getFoldedCount()
+    {
+        return folded.get();
+    }
+
+    public long getLastFoldTime()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(lastFoldTime);
+    }
+
+    public long getMaxFoldTime()
+    {
+        return TimeUnit.NANOSECONDS.toMicros(maxFoldTime);
     }
 
     @Override
@@ -51,4 +330,80 @@ public class LevelManager implements Manager
     {
         return parent;
     }
+
+    private static class Partition
+    {
+        private final RewardRing ring = new RewardRing(RING_SIZE);
+        // Reused by every fold, since only one runs per partition at a time
+        private final long[] guildIds = new long[BATCH_SIZE];
+        private final long[] memberIds = new long[BATCH_SIZE];
+        private final long[] times = new long[BATCH_SIZE];
+        private final float[] coins = new float[BATCH_SIZE];
+        private final float[] xp = new float[BATCH_SIZE];
+        private final long[] groupMemberIds = new long[BATCH_SIZE];
+        private final long[] groupTimes = new long[BATCH_SIZE];
+        private final float[] groupCoins = new float[BATCH_SIZE];
+        private final float[] groupXp = new float[BATCH_SIZE];
+        // Which group each event is in, and where each group's events start and end
+        private final LongIntMap groupMap = new LongIntMap(BATCH_SIZE);
+        private final int[] groupOf = new int[BATCH_SIZE];
+        private final long[] groupGuildIds = new long[BATCH_SIZE];
+        private final int[] groupStarts = new int[BATCH_SIZE];
+        private final int[] groupEnds = new int[BATCH_SIZE];
+
+        // Cache keys are strings, so each guild's is made once rather than on every batch
+        private final LongObjectMap<String> keyMap = new LongObjectMap<>();
+        private final LongSet loadingSet = new LongSet();
+        // Rewards for guilds that are still loading, by guild
+        private final LongObjectMap<Pending> pendingMap = new LongObjectMap<>();
+
+        private String keyOf(long guildId)
+        {
+            return keyMap.computeIfAbsent(guildId, Long::toString);
+        }
+    }
+
+    private class Pending
+    {
+        private final long guildId;
+        private final long since;
+        private final AtomicInteger failures = new AtomicInteger();
+        private long[] memberIds = new long[16];
+        private long[] times = new long[16];
+        private float[] coins = new float[16];
+        private float[] xp = new float[16];
+        // Only written by the partition's fold, but read for stats
+        private volatile int count;
+
+        private Pending(long guildId, long since)
+        {
+            this.guildId = guildId;
+            this.since = since;
+        }
+
+        private void addAll(Partition partition, int from, int to)
+        {
+            for (int i = from; i < to; i++)
+            {
+                if (count == MAX_PENDING)
+                {
+                    dropped.addAndGet(to - i);
+                    return;
+                }
+                if (count == memberIds.length)
+                {
+                    int length = Math.min(MAX_PENDING, count * 2);
+                    memberIds = Arrays.copyOf(memberIds, length);
+                    times = Arrays.copyOf(times, length);
+                    coins = Arrays.copyOf(coins, length);
+                    xp = Arrays.copyOf(xp, length);
+                }
+                memberIds[count] = partition.groupMemberIds[i];
+                times[count] = partition.groupTimes[i];
+                coins[count] = partition.groupCoins[i];
+                xp[count] = partition.groupXp[i];
+                count++;
+            }
+        }
+    }
 }
@@ -0,0 +1,139 @@
+package com.oopsjpeg.snubot.manager;
+
+import com.oopsjpeg.snubot.Manager;
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.data.store.HeapMemberStore;
+import com.oopsjpeg.snubot.data.store.MappedMemberStore;
+import com.oopsjpeg.snubot.data.store.MemberStore;
+import com.oopsjpeg.snubot.util.LongObjectMap;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+public class MemberStoreManager implements Manager
+{
+    public static final String HEAP = "heap";
+    public static final String MAPPED = "mapped";
+
+    private static final String SUFFIX = ".members";
+    private static final String SYNCED_FILE = "synced";
+
+    private final Snubot parent;
+    private final String type;
+    private final Path directory;
+    // Mapped stores stay open across guild reloads, since two stores can't share a file
+    private final LongObjectMap<MemberStore> storeMap = new LongObjectMap<>();
+    private final long syncedTime;
+
+    public MemberStoreManager(Snubot parent, String type, String directory)
+    {
+        this.parent = parent;
+        this.type = type;
+        this.directory = Paths.get(directory);
+
+        if (isMapped())
+        {
+            try
+            {
+                Files.createDirectories(this.directory);
+            }
+            catch (IOException error)
+            {
+                throw new UncheckedIOException(error);
+            }
+        }
+        syncedTime = readSyncedTime();
+    }
+
+    public boolean isMapped()
+    {
+        return type.equals(MAPPED);
+    }
+
+    public MemberStore open(long guildId)
+    {
+        if (!isMapped()) return new HeapMemberStore();
+        return storeMap.computeIfAbsent(guildId, id ->
+        {
+            try
+            {
+                return new MappedMemberStore(directory.resolve(id + SUFFIX));
+            }
+            catch (IOException error)
+            {
+                throw new UncheckedIOException(error);
+            }
+        });
+    }
+
+    public void sync()
+    {
+        if (!isMapped()) return;
+        // Taken before forcing, so anything saved to Mongo after it is caught up on the next start
+        long time = System.currentTimeMillis();
+        storeMap.values().forEach(MemberStore::force);
+        try
+        {
+            Path temp = directory.resolve(SYNCED_FILE + ".tmp");
+            Files.write(temp, Long.toString(time).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, directory.resolve(SYNCED_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException error)
+        {
+            Snubot.LOGGER.warn("Failed to mark member stores as synced: " + error.getMessage());
+        }
+    }
+
+    public void close()
+    {
+        sync();
+        storeMap.values().forEach(MemberStore::close);
+    }
+
+    private long readSyncedTime()
+    {
+        Path file = directory.resolve(SYNCED_FILE);
+        if (!isMapped() || !Files.exists(file)) return -1;
+        try
+        {
+            return Long.parseLong(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+        }
+        catch (IOException | NumberFormatException error)
+        {
+            Snubot.LOGGER.warn("Ignoring unreadable member store sync time: " + error.getMessage());
+            return -1;
+        }
+    }
+
+    public boolean isWarm()
+    {
+        // Stores left by a previous run already hold everything up to the sync time
+        return syncedTime >= 0;
+    }
+
+    public long getSyncedTime()
+    {
+        return syncedTime;
+    }
+
+    @Override
+    public Snubot getParent()
+    {
+        return parent;
+    }
+
+    public String getType()
+    {
+        return type;
+    }
+
+    public Path getDirectory()
+    {
+        return directory;
+    }
+}
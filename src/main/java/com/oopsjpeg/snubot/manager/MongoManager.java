@@ -1,95 +1,432 @@
 package com.oopsjpeg.snubot.manager;
 
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
-import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.*;
 import com.oopsjpeg.snubot.Manager;
 import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.data.Changes;
+import com.oopsjpeg.snubot.data.DiscordData;
+import com.oopsjpeg.snubot.data.SaveData;
+import com.oopsjpeg.snubot.data.codec.CodecUtil;
+import com.oopsjpeg.snubot.data.codec.SnubotCodecProvider;
 import com.oopsjpeg.snubot.data.impl.GuildData;
+import com.oopsjpeg.snubot.data.impl.MemberData;
 import com.oopsjpeg.snubot.data.impl.UserData;
+import com.oopsjpeg.snubot.data.store.MemberStore;
 import com.oopsjpeg.snubot.react.ReactMessage;
+import org.bson.BsonDocument;
 import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
 
-import java.util.LinkedList;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class MongoManager implements Manager
 {
     private final Snubot parent;
     private final MongoClient client;
+    private final CodecRegistry codecRegistry;
     private final MongoDatabase database;
+    private final int batchSize;
+    private final int batchRetries;
 
-    public MongoManager(Snubot parent, String host, String database)
+    public MongoManager(Snubot parent, String host, String database, int batchSize, int batchRetries)
+    {
+        this(parent, new MongoClient(host), database, batchSize, batchRetries);
+    }
+
+    private MongoManager(Snubot parent, MongoClient client, String database, int batchSize, int batchRetries)
+    {
+        this(parent, client, client.getDatabase(database), batchSize, batchRetries);
+    }
+
+    // Lets a database that isn't behind a client stand in, like one that only records what's written to it
+    MongoManager(Snubot parent, MongoClient client, MongoDatabase database, int batchSize, int batchRetries)
     {
         this.parent = parent;
-        client = new MongoClient(host);
-        this.database = client.getDatabase(database);
+        this.client = client;
+        // Guilds decode straight into the member stores they'll be kept in
+        codecRegistry = SnubotCodecProvider.registry(id -> parent.getMemberStoreManager().open(id));
+        this.database = database.withCodecRegistry(codecRegistry);
+        this.batchSize = batchSize;
+        this.batchRetries = batchRetries;
+
+        getMemberDataCollection().createIndex(Indexes.ascending("guildId", "memberId"), new IndexOptions().unique(true));
+        // Used to catch up on whatever changed since the last snapshot
+        getUserDataCollection().createIndex(Indexes.ascending("updatedAt"));
+        getGuildDataCollection().createIndex(Indexes.ascending("updatedAt"));
+        getMemberDataCollection().createIndex(Indexes.ascending("updatedAt"));
+    }
+
+    public CodecRegistry getCodecRegistry()
+    {
+        return codecRegistry;
+    }
+
+    public MongoCollection<UserData> getUserDataCollection()
+    {
+        return database.getCollection("users", UserData.class);
+    }
+
+    public MongoCollection<GuildData> getGuildDataCollection()
+    {
+        return database.getCollection("guilds", GuildData.class);
+    }
+
+    public MongoCollection<MemberData> getMemberDataCollection()
+    {
+        return database.getCollection("members", MemberData.class);
+    }
+
+    public MongoCollection<ReactMessage> getReactMessageCollection()
+    {
+        return database.getCollection("react_messages", ReactMessage.class);
+    }
+
+    public long streamUserData(Consumer<UserData> consumer)
+    {
+        return stream(getUserDataCollection(), consumer);
     }
 
-    public MongoCollection<Document> getUserDataCollection()
+    public long streamGuildData(Consumer<GuildData> consumer)
     {
-        return database.getCollection("users");
+        return stream(getGuildDataCollection(), consumer);
     }
 
-    public MongoCollection<Document> getGuildDataCollection()
+    public long streamMemberData(Consumer<MemberData> consumer)
     {
-        return database.getCollection("guilds");
+        return stream(getMemberDataCollection(), consumer);
     }
 
-    public MongoCollection<Document> getReactMessageCollection()
+    public long streamReactMessages(Consumer<ReactMessage> consumer)
     {
-        return database.getCollection("react_messages");
+        return stream(getReactMessageCollection(), consumer);
     }
 
-    public Map<String, UserData> fetchUserDataMap()
+    public long streamUserDataSince(long time, Consumer<UserData> consumer)
     {
-        Snubot.LOGGER.info("Fetching user data map.");
-        return getUserDataCollection().find().into(new LinkedList<>()).stream()
-                .map(d -> Snubot.GSON.fromJson(d.toJson(), UserData.class))
-                .collect(Collectors.toMap(UserData::getId, d -> d));
+        return stream(getUserDataCollection(), updatedSince(time), consumer);
     }
 
-    public Map<String, GuildData> fetchGuildDataMap()
+    public long streamGuildDataSince(long time, Consumer<GuildData> consumer)
     {
-        Snubot.LOGGER.info("Fetching guild data map.");
-        return getGuildDataCollection().find().into(new LinkedList<>()).stream()
-                .map(d -> Snubot.GSON.fromJson(d.toJson(), GuildData.class))
-                .collect(Collectors.toMap(GuildData::getId, d -> d));
+        return stream(getGuildDataCollection(), updatedSince(time), consumer);
     }
 
-    public Map<String, ReactMessage> fetchReactMessageMap()
+    public long streamMemberDataSince(long time, Consumer<MemberData> consumer)
     {
-        Snubot.LOGGER.info("Fetching react message map.");
-        return getReactMessageCollection().find().into(new LinkedList<>()).stream()
-                .map(d -> Snubot.GSON.fromJson(d.toJson(), ReactMessage.class))
-                .collect(Collectors.toMap(ReactMessage::getId, d -> d));
+        return stream(getMemberDataCollection(), updatedSince(time), consumer);
     }
 
-    public void saveUserData(UserData data)
+    private <T> long stream(MongoCollection<T> collection, Consumer<T> consumer)
     {
-        Snubot.LOGGER.info("Saving user data of ID " + data.getId() + ".");
-        getUserDataCollection().replaceOne(Filters.eq("_id", data.getId()), Document.parse(Snubot.GSON.toJson(data)), new ReplaceOptions().upsert(true));
+        return stream(collection, new Document(), consumer);
+    }
+
+    private <T> long stream(MongoCollection<T> collection, Bson filter, Consumer<T> consumer)
+    {
+        String name = collection.getNamespace().getCollectionName();
+        long start = System.nanoTime();
+        long count = 0;
+
+        // Hand each document over as its batch arrives instead of collecting the whole collection first
+        try (MongoCursor<T> cursor = collection.find(filter).batchSize(batchSize).iterator())
+        {
+            while (cursor.hasNext())
+            {
+                consumer.accept(cursor.next());
+                count++;
+            }
+        }
+
+        Snubot.LOGGER.info("Loaded " + count + " document(s) from " + name + " in " + elapsed(start) + "ms.");
+        return count;
+    }
+
+    public UserData fetchUserData(String id)
+    {
+        return getUserDataCollection().find(Filters.eq("_id", id)).first();
+    }
+
+    public GuildData fetchGuildData(String id)
+    {
+        GuildData data = getGuildDataCollection().find(Filters.eq("_id", id)).first();
+        if (data != null)
+        {
+            // Warm mapped stores already hold the members, save for what changed after they were synced
+            MemberStoreManager memberStores = parent.getMemberStoreManager();
+            Bson filter = memberStores.isWarm()
+                    ? Filters.and(Filters.eq("guildId", id), updatedSince(memberStores.getSyncedTime()))
+                    : Filters.eq("guildId", id);
+            getMemberDataCollection().find(filter).forEach((Consumer<MemberData>) data::putMemberData);
+        }
+        return data;
+    }
+
+    public List<String> fetchReconcilingGuildIds()
+    {
+        // Only the IDs, since the guilds themselves are loaded through the cache
+        List<String> idList = new ArrayList<>();
+        getGuildDataCollection().withDocumentClass(Document.class)
+                .find(Filters.gte("leveling.reconcileCheckpoint", 0))
+                .projection(Projections.include("_id"))
+                .forEach((Consumer<Document>) d -> idList.add(d.getString("_id")));
+        return idList;
     }
 
     public void saveGuildData(GuildData data)
     {
         Snubot.LOGGER.info("Saving guild data of ID " + data.getId() + ".");
-        getGuildDataCollection().replaceOne(Filters.eq("_id", data.getId()), Document.parse(Snubot.GSON.toJson(data)), new ReplaceOptions().upsert(true));
+        getGuildDataCollection().replaceOne(idFilter(data), data, new ReplaceOptions().upsert(true));
     }
 
     public void saveReactMessage(ReactMessage message)
     {
         Snubot.LOGGER.info("Saving react message of ID " + message.getId() + ".");
-        getReactMessageCollection().replaceOne(Filters.eq("_id", message.getId()), Document.parse(Snubot.GSON.toJson(message)), new ReplaceOptions().upsert(true));
+        getReactMessageCollection().replaceOne(idFilter(message), message, new ReplaceOptions().upsert(true));
+    }
+
+    public CompletableFuture<Void> saveUserDataList(Collection<UserData> dataList)
+    {
+        return bulkSave(getUserDataCollection(), dataList, d -> saveWrite(d, idFilter(d)));
+    }
+
+    public CompletableFuture<Void> saveGuildDataList(Collection<GuildData> dataList)
+    {
+        return bulkSave(getGuildDataCollection(), dataList, d -> saveWrite(d, idFilter(d)));
+    }
+
+    public CompletableFuture<Void> saveMemberStores(Collection<GuildData> dataList)
+    {
+        return bulkSave(getMemberDataCollection(), dataList.stream()
+                .flatMap(d -> memberWrites(d).stream())
+                .collect(Collectors.toList()));
+    }
+
+    public CompletableFuture<Void> saveReactMessageList(Collection<ReactMessage> messageList)
+    {
+        return bulkSave(getReactMessageCollection(), messageList, d -> saveWrite(d, idFilter(d)));
+    }
+
+    public boolean flushUserData(UserData data)
+    {
+        // The journal has to be ahead of Mongo, or a replay could roll the flushed changes back
+        parent.getJournalManager().commit();
+        return !data.hasChanges() || flush(getUserDataCollection(), saveWrite(data, idFilter(data)));
+    }
+
+    public boolean flushGuildData(GuildData data)
+    {
+        parent.getJournalManager().commit();
+        boolean flushed = !data.hasChanges() || flush(getGuildDataCollection(), saveWrite(data, idFilter(data)));
+        for (SaveWrite write : memberWrites(data))
+            flushed &= flush(getMemberDataCollection(), write);
+        return flushed;
+    }
+
+    private boolean flush(MongoCollection<?> collection, SaveWrite write)
+    {
+        // Write right away without background retries, so the caller knows if it's safe to drop the data
+        try
+        {
+            collection.withDocumentClass(BsonDocument.class).bulkWrite(Collections.singletonList(write.model));
+            write.saved();
+            return true;
+        }
+        catch (MongoException error)
+        {
+            Snubot.LOGGER.warn("Failed to flush to " + collection.getNamespace().getCollectionName() + ": " + error.getMessage());
+            write.failed();
+            return false;
+        }
+    }
+
+    private SaveWrite saveWrite(SaveData data, Bson filter)
+    {
+        // Replace the whole document if it was marked for save, otherwise only update what changed
+        long version = data.getSaveMarker().getVersion();
+        if (data.isMarkedForSave())
+        {
+            // Take the changes before encoding and hold the data still while doing both,
+            // so anything changed along the way is either in the document or left for the next save
+            BsonDocument document;
+            synchronized (data)
+            {
+                data.getChanges().drain();
+                document = CodecUtil.toDocument(data);
+            }
+            return new SaveWrite(data, version, new ReplaceOneModel<>(filter, document, new ReplaceOptions().upsert(true)), true);
+        }
+        Changes changes = data.getChanges().drain();
+        return new SaveWrite(data, -1, new UpdateOneModel<>(filter, toUpdate(changes), new UpdateOptions().upsert(true)), changes.getIncMap().isEmpty());
+    }
+
+    private List<SaveWrite> memberWrites(GuildData data)
+    {
+        // Counters go out as $inc, so another writer's increments aren't overwritten
+        MemberStore store = data.getMemberStore();
+        List<SaveWrite> writeList = new ArrayList<>();
+        synchronized (store)
+        {
+            for (int slot : store.drainDirty())
+            {
+                MemberData member = data.getMemberDataAt(slot);
+                long id = member.getIdAsLong();
+                Changes changes = member.drainChanges();
+                // A failed increment is sent as the member's current values next time, in case it was applied after all
+                writeList.add(new SaveWrite(() -> store.markSaved(id), () ->
+                {
+                    store.markSet(id, MemberStore.ALL);
+                    data.touchMembers();
+                }, new UpdateOneModel<>(memberFilter(member), toUpdate(changes), new UpdateOptions().upsert(true)), changes.getIncMap().isEmpty()));
+            }
+            // Removed members are deleted rather than left to come back on the next load
+            for (long id : store.drainRemoved())
+                writeList.add(new SaveWrite(() -> {}, () ->
+                {
+                    store.markRemoved(id);
+                    data.touchMembers();
+                }, new DeleteOneModel<>(memberFilter(data.getId(), Long.toString(id))), true));
+        }
+        return writeList;
+    }
+
+    private Bson toUpdate(Changes changes)
+    {
+        // Values are encoded by the collection's codecs when the update is sent
+        List<Bson> updateList = new ArrayList<>();
+        changes.getSetMap().forEach((path, value) -> updateList.add(Updates.set(path, value)));
+        changes.getIncMap().forEach((path, amount) -> updateList.add(Updates.inc(path, amount)));
+        changes.getUnsetSet().forEach(path -> updateList.add(Updates.unset(path)));
+        updateList.add(Updates.set("updatedAt", new Date()));
+        return Updates.combine(updateList);
+    }
+
+    private static Bson updatedSince(long time)
+    {
+        return Filters.gt("updatedAt", new Date(time));
+    }
+
+    static Bson idFilter(DiscordData data)
+    {
+        return Filters.eq("_id", data.getId());
+    }
+
+    static Bson memberFilter(MemberData data)
+    {
+        return memberFilter(data.getGuildId(), data.getId());
+    }
+
+    static Bson memberFilter(String guildId, String memberId)
+    {
+        // Member IDs are only unique within a guild, so the member ID can't be the document ID
+        return Filters.and(Filters.eq("guildId", guildId), Filters.eq("memberId", memberId));
+    }
+
+    private <T extends SaveData> CompletableFuture<Void> bulkSave(MongoCollection<T> collection, Collection<T> dataList, Function<T, SaveWrite> toWrite)
+    {
+        // Writes are built once so retries send exactly what was taken from the data
+        return bulkSave(collection, dataList.stream().map(toWrite).collect(Collectors.toList()));
+    }
+
+    private CompletableFuture<Void> bulkSave(MongoCollection<?> collection, List<SaveWrite> writeList)
+    {
+        MongoCollection<BsonDocument> documents = collection.withDocumentClass(BsonDocument.class);
+        List<CompletableFuture<Void>> futureList = new ArrayList<>();
+        // Split the dirty documents into batches and write each one unordered
+        for (int i = 0; i < writeList.size(); i += batchSize)
+        {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            futureList.add(future);
+            writeBatch(documents, new ArrayList<>(writeList.subList(i, Math.min(writeList.size(), i + batchSize))), 0, future);
+        }
+        // Completes once every batch is either written or marked to be rewritten
+        return CompletableFuture.allOf(futureList.toArray(new CompletableFuture<?>[0]));
+    }
+
+    private void writeBatch(MongoCollection<BsonDocument> collection, List<SaveWrite> batch, int attempt, CompletableFuture<Void> future)
+    {
+        String name = collection.getNamespace().getCollectionName();
+        long start = System.nanoTime();
+        List<WriteModel<BsonDocument>> modelList = batch.stream().map(w -> w.model).collect(Collectors.toList());
+
+        try
+        {
+            BulkWriteResult result = collection.bulkWrite(modelList, new BulkWriteOptions().ordered(false));
+            Snubot.LOGGER.info("Wrote batch of " + batch.size() + " to " + name + " in " + elapsed(start) + "ms ("
+                    + result.getUpserts().size() + " upserted, " + result.getModifiedCount() + " modified).");
+            batch.forEach(SaveWrite::saved);
+            future.complete(null);
+        }
+        catch (MongoBulkWriteException error)
+        {
+            // Unordered writes still apply everything else, so only retry the documents that failed
+            Set<Integer> failed = error.getWriteErrors().stream().map(BulkWriteError::getIndex).collect(Collectors.toSet());
+            Snubot.LOGGER.warn("Failed to write " + failed.size() + " of " + batch.size() + " to " + name + " in " + elapsed(start) + "ms: "
+                    + error.getWriteErrors().get(0).getMessage());
+            List<SaveWrite> retryList = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++)
+                if (failed.contains(i))
+                    retryList.add(batch.get(i));
+                else
+                    batch.get(i).saved();
+            retryBatch(collection, retryList, attempt, future);
+        }
+        catch (MongoException error)
+        {
+            // A timeout doesn't say whether the batch was applied, so increments are written whole next time instead of twice
+            Snubot.LOGGER.warn("Failed to write batch of " + batch.size() + " to " + name + " in " + elapsed(start) + "ms: " + error.getMessage());
+            List<SaveWrite> retryList = new ArrayList<>();
+            for (SaveWrite write : batch)
+                if (write.idempotent)
+                    retryList.add(write);
+                else
+                    write.failed();
+            retryBatch(collection, retryList, attempt, future);
+        }
+    }
+
+    private void retryBatch(MongoCollection<BsonDocument> collection, List<SaveWrite> batch, int attempt, CompletableFuture<Void> future)
+    {
+        if (batch.isEmpty())
+            future.complete(null);
+        else if (attempt < batchRetries)
+        {
+            // Back off in the background so the rest of the flush isn't held up
+            Snubot.SCHEDULER.schedule(() -> writeBatch(collection, batch, attempt + 1, future), 1L << attempt, TimeUnit.SECONDS);
+        }
+        else
+        {
+            // Give up for now and rewrite the full documents on the next flush
+            Snubot.LOGGER.error("Gave up writing batch of " + batch.size() + " to " + collection.getNamespace().getCollectionName()
+                    + " after " + (attempt + 1) + " attempt(s).");
+            batch.forEach(SaveWrite::failed);
+            future.complete(null);
+        }
+    }
+
+    private static long elapsed(long start)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
     }
 
     public void removeReactMessage(ReactMessage message)
     {
         Snubot.LOGGER.info("Remove react message of ID " + message.getId() + ".");
-        getReactMessageCollection().deleteOne(Filters.eq("_id", message.getId()));
+        parent.getJournalManager().remove(message);
+        getReactMessageCollection().deleteOne(idFilter(message));
     }
 
     @Override
@@ -98,6 +435,45 @@ public class MongoManager implements Manager
         return parent;
     }
 
+    private static class SaveWrite
+    {
+        private final Runnable onSaved;
+        private final Runnable onFailed;
+        private final WriteModel<BsonDocument> model;
+        // Whether sending it twice leaves the same document as sending it once
+        private final boolean idempotent;
+
+        // Version is the marker version a replacement was taken at, or -1 for updates
+        private SaveWrite(SaveData data, long version, WriteModel<BsonDocument> model, boolean idempotent)
+        {
+            // Only clears the mark if it wasn't marked again since
+            this(() ->
+            {
+                if (version >= 0)
+                    data.getSaveMarker().saved(version);
+            }, data::markForSave, model, idempotent);
+        }
+
+        private SaveWrite(Runnable onSaved, Runnable onFailed, WriteModel<BsonDocument> model, boolean idempotent)
+        {
+            this.onSaved = onSaved;
+            this.onFailed = onFailed;
+            this.model = model;
+            this.idempotent = idempotent;
+        }
+
+        private void saved()
+        {
+            onSaved.run();
+        }
+
+        private void failed()
+        {
+            // Leaves the data to be written whole on the next save
+            onFailed.run();
+        }
+    }
+
     public MongoClient getClient()
     {
         return client;
@@ -107,4 +483,14 @@ public class MongoManager implements Manager
     {
         return database;
     }
+
+    public int getBatchSize()
+    {
+        return batchSize;
+    }
+
+    public int getBatchRetries()
+    {
+        return batchRetries;
+    }
 }
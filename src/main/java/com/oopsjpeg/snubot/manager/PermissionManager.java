@@ -0,0 +1,264 @@
+package com.oopsjpeg.snubot.manager;
+
+import com.oopsjpeg.snubot.Manager;
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.util.LongObjectMap;
+import discord4j.common.util.Snowflake;
+import discord4j.core.GatewayDiscordClient;
+import discord4j.core.event.domain.channel.TextChannelDeleteEvent;
+import discord4j.core.event.domain.channel.TextChannelUpdateEvent;
+import discord4j.core.event.domain.guild.GuildCreateEvent;
+import discord4j.core.event.domain.guild.GuildDeleteEvent;
+import discord4j.core.event.domain.guild.GuildUpdateEvent;
+import discord4j.core.event.domain.guild.MemberLeaveEvent;
+import discord4j.core.event.domain.guild.MemberUpdateEvent;
+import discord4j.core.object.PermissionOverwrite;
+import discord4j.core.object.entity.Member;
+import discord4j.core.object.entity.Role;
+import discord4j.core.object.entity.channel.GuildChannel;
+import discord4j.rest.util.Permission;
+import discord4j.rest.util.PermissionSet;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+public class PermissionManager implements Manager
+{
+    // How long the application's owner is trusted before it's asked for again
+    private static final Duration OWNER_TTL = Duration.ofHours(1);
+
+    private final Snubot parent;
+    private final int memberLimit;
+
+    private Mono<Long> ownerRequest;
+    private volatile long ownerId;
+    // Everything permissions are worked out from, each kept up to date by its own events
+    private final LongObjectMap<Long> guildOwnerMap = new LongObjectMap<>();
+    private final LongObjectMap<Members> memberRoleMap = new LongObjectMap<>();
+    private final LongObjectMap<LongObjectMap<Set<? extends PermissionOverwrite>>> overwriteMap = new LongObjectMap<>();
+
+    public PermissionManager(Snubot parent, int memberLimit)
+    {
+        this.parent = parent;
+        this.memberLimit = memberLimit;
+    }
+
+    public boolean isOwner(Snowflake userId)
+    {
+        // Checks never wait on Discord, so until the owner is known nobody is one
+        refreshOwner();
+        return ownerId != 0 && userId.asLong() == ownerId;
+    }
+
+    private void refreshOwner()
+    {
+        // Answered straight from the cache while it's fresh, and asked again once it isn't
+        ownerRequest.subscribe(id -> ownerId = id, error -> Snubot.LOGGER.warn("Failed to get the application's owner: " + error.getMessage()));
+    }
+
+    public boolean hasPermissions(GuildChannel channel, Snowflake userId, PermissionSet permissionSet)
+    {
+        return getPermissions(channel, userId.asLong()).containsAll(permissionSet);
+    }
+
+    public PermissionSet getPermissions(GuildChannel channel, long memberId)
+    {
+        long guildId = channel.getGuildId().asLong();
+        if (memberId == getGuildOwnerId(guildId))
+            return PermissionSet.all();
+
+        // The everyone role shares its ID with the guild
+        long[] roleIds = getRoleIds(guildId, memberId);
+        long permissions = getRolePermissions(guildId, guildId);
+        for (long roleId : roleIds)
+            permissions |= getRolePermissions(guildId, roleId);
+        if ((permissions & Permission.ADMINISTRATOR.getValue()) != 0)
+            return PermissionSet.all();
+
+        // Overwrites go everyone first, then all of the member's roles together, then the member
+        Set<? extends PermissionOverwrite> overwrites = getOverwrites(channel);
+        long roleAllowed = 0;
+        long roleDenied = 0;
+        PermissionOverwrite memberOverwrite = null;
+        for (PermissionOverwrite overwrite : overwrites)
+        {
+            long targetId = overwrite.getTargetId().asLong();
+            if (targetId == guildId)
+                permissions = (permissions & ~overwrite.getDenied().getRawValue()) | overwrite.getAllowed().getRawValue();
+            else if (targetId == memberId && overwrite.getType() == PermissionOverwrite.Type.MEMBER)
+                memberOverwrite = overwrite;
+            else if (contains(roleIds, targetId))
+            {
+                roleAllowed |= overwrite.getAllowed().getRawValue();
+                roleDenied |= overwrite.getDenied().getRawValue();
+            }
+        }
+        permissions = (permissions & ~roleDenied) | roleAllowed;
+        if (memberOverwrite != null)
+            permissions = (permissions & ~memberOverwrite.getDenied().getRawValue()) | memberOverwrite.getAllowed().getRawValue();
+        return PermissionSet.of(permissions);
+    }
+
+    private static boolean contains(long[] ids, long id)
+    {
+        for (long i : ids)
+            if (i == id)
+                return true;
+        return false;
+    }
+
+    private long getRolePermissions(long guildId, long roleId)
+    {
+        // A role the cache hasn't seen yet grants nothing, rather than waiting on Discord
+        Role role = parent.getRoleCacheManager().getRole(guildId, roleId);
+        return role != null ? role.getPermissions().getRawValue() : 0;
+    }
+
+    private long getGuildOwnerId(long guildId)
+    {
+        Long ownerId = guildOwnerMap.get(guildId);
+        if (ownerId != null)
+            return ownerId;
+        // Guild creates fill this in for every guild, so a miss is fetched for next time and treated as no owner
+        parent.getGateway().getGuildById(Snowflake.of(guildId))
+                .subscribe(g -> guildOwnerMap.put(guildId, g.getOwnerId().asLong()),
+                        error -> Snubot.LOGGER.warn("Failed to get the owner of guild ID " + guildId + ": " + error.getMessage()));
+        return 0;
+    }
+
+    private long[] getRoleIds(long guildId, long memberId)
+    {
+        Members members = memberRoleMap.get(guildId);
+        long[] roleIds = null;
+        if (members != null)
+            synchronized (members)
+            {
+                roleIds = members.get(memberId);
+            }
+        if (roleIds != null)
+            return roleIds;
+        // Commands put their author in first, so only other members are fetched for next time and have no roles until then
+        parent.getGateway().getMemberById(Snowflake.of(guildId), Snowflake.of(memberId))
+                .subscribe(this::putMember, error -> Snubot.LOGGER.warn("Failed to get member ID " + memberId + " in guild ID " + guildId + ": " + error.getMessage()));
+        return new long[0];
+    }
+
+    public void putMember(Member member)
+    {
+        // Members are only cached once they've needed a check, and only the most recent in each guild are kept
+        Members members = memberRoleMap.computeIfAbsent(member.getGuildId().asLong(), id -> new Members(memberLimit));
+        synchronized (members)
+        {
+            members.put(member.getId().asLong(), toArray(member.getRoleIds()));
+        }
+    }
+
+    private Set<? extends PermissionOverwrite> getOverwrites(GuildChannel channel)
+    {
+        // Kept by guild, so they go along with it when it's deleted
+        LongObjectMap<Set<? extends PermissionOverwrite>> channelMap = overwriteMap.computeIfAbsent(channel.getGuildId().asLong(), id -> new LongObjectMap<>());
+        Set<? extends PermissionOverwrite> overwrites = channelMap.get(channel.getId().asLong());
+        if (overwrites == null)
+        {
+            overwrites = channel.getPermissionOverwrites();
+            channelMap.put(channel.getId().asLong(), overwrites);
+        }
+        return overwrites;
+    }
+
+    private static long[] toArray(Set<Snowflake> ids)
+    {
+        return ids.stream().mapToLong(Snowflake::asLong).toArray();
+    }
+
+    private void onMemberUpdate(MemberUpdateEvent event)
+    {
+        // Only members already cached are kept in step, the rest are fetched when they're checked
+        Members members = memberRoleMap.get(event.getGuildId().asLong());
+        if (members != null)
+            synchronized (members)
+            {
+                // Replaced without being looked up, so it doesn't count as recent use
+                if (members.containsKey(event.getMemberId().asLong()))
+                    members.replace(event.getMemberId().asLong(), toArray(event.getCurrentRoles()));
+            }
+    }
+
+    private void onMemberLeave(MemberLeaveEvent event)
+    {
+        Members members = memberRoleMap.get(event.getGuildId().asLong());
+        if (members != null)
+            synchronized (members)
+            {
+                members.remove(event.getUser().getId().asLong());
+            }
+    }
+
+    private void onChannelUpdate(TextChannelUpdateEvent event)
+    {
+        LongObjectMap<Set<? extends PermissionOverwrite>> channelMap = overwriteMap.get(event.getCurrent().getGuildId().asLong());
+        if (channelMap != null)
+            channelMap.put(event.getCurrent().getId().asLong(), event.getCurrent().getPermissionOverwrites());
+    }
+
+    private void onChannelDelete(TextChannelDeleteEvent event)
+    {
+        LongObjectMap<Set<? extends PermissionOverwrite>> channelMap = overwriteMap.get(event.getChannel().getGuildId().asLong());
+        if (channelMap != null)
+            channelMap.remove(event.getChannel().getId().asLong());
+    }
+
+    private void onGuildDelete(GuildDeleteEvent event)
+    {
+        long guildId = event.getGuildId().asLong();
+        guildOwnerMap.remove(guildId);
+        memberRoleMap.remove(guildId);
+        overwriteMap.remove(guildId);
+    }
+
+    @Override
+    public void register(GatewayDiscordClient gateway)
+    {
+        // Failures and empty answers aren't kept, so the next check asks again
+        ownerRequest = gateway.getApplicationInfo()
+                .map(info -> info.getOwnerId().asLong())
+                .cache(id -> OWNER_TTL, error -> Duration.ZERO, () -> Duration.ZERO);
+        refreshOwner();
+        gateway.on(GuildCreateEvent.class).subscribe(e -> guildOwnerMap.put(e.getGuild().getId().asLong(), e.getGuild().getOwnerId().asLong()));
+        gateway.on(GuildUpdateEvent.class).subscribe(e -> guildOwnerMap.put(e.getCurrent().getId().asLong(), e.getCurrent().getOwnerId().asLong()));
+        gateway.on(GuildDeleteEvent.class).subscribe(this::onGuildDelete);
+        gateway.on(MemberUpdateEvent.class).subscribe(this::onMemberUpdate);
+        gateway.on(MemberLeaveEvent.class).subscribe(this::onMemberLeave);
+        gateway.on(TextChannelUpdateEvent.class).subscribe(this::onChannelUpdate);
+        gateway.on(TextChannelDeleteEvent.class).subscribe(this::onChannelDelete);
+    }
+
+    @Override
+    public Snubot getParent()
+    {
+        return parent;
+    }
+
+    private static class Members extends LinkedHashMap<Long, long[]>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int limit;
+
+        private Members(int limit)
+        {
+            // Access order puts the member checked longest ago first
+            super(16, 0.75f, true);
+            this.limit = limit;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest)
+        {
+            return size() > limit;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.oopsjpeg.snubot.manager;
+
+import com.oopsjpeg.snubot.Manager;
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.data.impl.GuildData;
+import com.oopsjpeg.snubot.data.impl.Leveling;
+import com.oopsjpeg.snubot.data.impl.MemberData;
+import com.oopsjpeg.snubot.util.LongObjectMap;
+import discord4j.common.util.Snowflake;
+import discord4j.core.GatewayDiscordClient;
+import discord4j.core.object.entity.Member;
+import discord4j.rest.util.PaginationUtil;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ReconcileManager implements Manager
+{
+    // The most members Discord hands back per page
+    private static final int PAGE_SIZE = 1000;
+
+    private final Snubot parent;
+    private final int concurrency;
+    private final LongObjectMap<Job> jobMap = new LongObjectMap<>();
+
+    public ReconcileManager(Snubot parent, int concurrency)
+    {
+        this.parent = parent;
+        this.concurrency = concurrency;
+    }
+
+    public Job start(GuildData data)
+    {
+        // Settings changed under a running job, so it starts over
+        cancel(data);
+        data.getLeveling().setReconcileCheckpoint(0);
+        return run(data);
+    }
+
+    public void resumeAll()
+    {
+        // Picks up jobs that were running when the bot stopped. Guilds that aren't cached only have theirs in Mongo,
+        // and cached ones may have one that wasn't saved yet
+        Set<String> idSet = new LinkedHashSet<>(parent.getMongoManager().fetchReconcilingGuildIds());
+        for (GuildData data : parent.getGuildDataCache().values())
+            if (data.getLeveling().hasReconcileCheckpoint())
+                idSet.add(data.getId());
+        for (String id : idSet)
+        {
+            GuildData data = parent.getGuildData(id);
+            if (data != null && data.getLeveling().hasReconcileCheckpoint())
+                run(data);
+        }
+    }
+
+    public boolean cancel(GuildData data)
+    {
+        Job job = jobMap.remove(data.getIdAsLong());
+        if (data.getLeveling().hasReconcileCheckpoint())
+            data.getLeveling().setReconcileCheckpoint(-1);
+        if (job == null || job.isDone())
+            return false;
+        job.state = State.CANCELLED;
+        if (job.disposable != null)
+            job.disposable.dispose();
+        return true;
+    }
+
+    public Job getJob(GuildData data)
+    {
+        return jobMap.get(data.getIdAsLong());
+    }
+
+    private Job run(GuildData data)
+    {
+        Leveling leveling = data.getLeveling();
+        long checkpoint = leveling.getReconcileCheckpoint();
+        Job job = new Job(checkpoint);
+        jobMap.put(data.getIdAsLong(), job);
+        Snubot.LOGGER.info("Reconciling level roles in guild ID " + data.getId() + (checkpoint > 0 ? " from member ID " + checkpoint : "") + ".");
+
+        long guildId = data.getIdAsLong();
+        GatewayDiscordClient gateway = parent.getGateway();
+        // Held for as long as the job runs, so the checkpoint isn't evicted out from under it
+        parent.getGuildDataCache().pin(data.getId());
+
+        // Pages come by ID, so each one is reconciled and checkpointed before the next is fetched
+        job.disposable = PaginationUtil.paginateAfter(params -> gateway.getRestClient().getGuildService().getGuildMembers(guildId, params),
+                        m -> Snowflake.asLong(m.user().id()), Math.max(checkpoint, 0), PAGE_SIZE)
+                .map(m -> new Member(gateway, m, guildId))
+                .buffer(PAGE_SIZE)
+                .concatMap(page -> reconcile(job, data, page).thenReturn(page.get(page.size() - 1).getId().asLong()))
+                .doOnNext(leveling::setReconcileCheckpoint)
+                .doOnComplete(() ->
+                {
+                    job.state = State.DONE;
+                    leveling.setReconcileCheckpoint(-1);
+                    Snubot.LOGGER.info("Reconciled level roles in guild ID " + data.getId() + " (" + job.scanned + " scanned, "
+                            + job.changed + " changed, " + job.failed + " failed).");
+                })
+                .doOnError(error ->
+                {
+                    // The checkpoint stays, so the next start carries on from it
+                    job.state = State.FAILED;
+                    Snubot.LOGGER.warn("Failed to reconcile level roles in guild ID " + data.getId() + ": " + error.getMessage());
+                })
+                .doFinally(signal -> parent.getGuildDataCache().unpin(data.getId()))
+                .subscribe(null, error -> {});
+        return job;
+    }
+
+    private Mono<Void> reconcile(Job job, GuildData data, List<Member> page)
+    {
+        // Only the members whose roles are off get an edit
+        Leveling leveling = data.getLeveling();
+        List<Change> changeList = new ArrayList<>();
+        for (Member member : page)
+        {
+            job.scanned.incrementAndGet();
+            MemberData memberData = data.getMemberData(member.getId());
+            if (memberData == null) continue;
+            Set<Snowflake> roleIds = leveling.getSyncedRoleIds(member.getRoleIds(), memberData.getLevel());
+            if (!roleIds.equals(member.getRoleIds()))
+                changeList.add(new Change(member, roleIds));
+        }
+        job.pending.set(changeList.size());
+
+        return Flux.fromIterable(changeList)
+                .flatMap(c -> c.member.edit(spec -> spec.setRoles(c.roleIds))
+                        .doOnSuccess(v -> job.changed.incrementAndGet())
+                        .onErrorResume(error ->
+                        {
+                            job.failed.incrementAndGet();
+                            Snubot.LOGGER.warn("Failed to reconcile level roles of member ID " + c.member.getId().asString() + ": " + error.getMessage());
+                            return Mono.empty();
+                        })
+                        .doFinally(signal -> job.pending.decrementAndGet()), concurrency)
+                .then();
+    }
+
+    @Override
+    public Snubot getParent()
+    {
+        return parent;
+    }
+
+    public int getConcurrency()
+    {
+        return concurrency;
+    }
+
+    public enum State
+    {
+        RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    public static class Job
+    {
+        private final long checkpoint;
+        private final AtomicInteger scanned = new AtomicInteger();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicInteger changed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private volatile State state = State.RUNNING;
+        private Disposable disposable;
+
+        private Job(long checkpoint)
+        {
+            this.checkpoint = checkpoint;
+        }
+
+        public boolean isDone()
+        {
+            return state != State.RUNNING;
+        }
+
+        public long getCheckpoint()
+        {
+            return checkpoint;
+        }
+
+        public int getScanned()
+        {
+            return scanned.get();
+        }
+
+        public int getPending()
+        {
+            return pending.get();
+        }
+
+        public int getChanged()
+        {
+            return changed.get();
+        }
+
+        public int getFailed()
+        {
+            return failed.get();
+        }
+
+        public State getState()
+        {
+            return state;
+        }
+    }
+
+    private static class Change
+    {
+        private final Member member;
+        private final Set<Snowflake> roleIds;
+
+        private Change(Member member, Set<Snowflake> roleIds)
+        {
+            this.member = member;
+            this.roleIds = roleIds;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.oopsjpeg.snubot.manager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Bounded ring of message rewards for many producers and one consumer.
+// Each slot's sequence says whether it's free to write or ready to read, so neither side takes a lock.
+class RewardRing
+{
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] guildIds;
+    private final long[] memberIds;
+    private final long[] times;
+    private final float[] coins;
+    private final float[] xp;
+
+    private final AtomicLong tail = new AtomicLong();
+    // Only moved by the consumer, but read by anyone asking for the size
+    private volatile long head;
+
+    RewardRing(int capacity)
+    {
+        capacity = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = capacity - 1;
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+            sequences.set(i, i);
+        guildIds = new long[capacity];
+        memberIds = new long[capacity];
+        times = new long[capacity];
+        coins = new float[capacity];
+        xp = new float[capacity];
+    }
+
+    boolean offer(long guildId, long memberId, long time, float coins, float xp)
+    {
+        long position;
+        int i;
+        while (true)
+        {
+            position = tail.get();
+            i = (int) position & mask;
+            long difference = sequences.get(i) - position;
+            if (difference == 0)
+            {
+                if (tail.compareAndSet(position, position + 1))
+                    break;
+            }
+            // The consumer hasn't freed this slot yet, so the ring is full
+            else if (difference < 0)
+                return false;
+        }
+
+        guildIds[i] = guildId;
+        memberIds[i] = memberId;
+        times[i] = time;
+        this.coins[i] = coins;
+        this.xp[i] = xp;
+        // Publishes the writes above to the consumer
+        sequences.set(i, position + 1);
+        return true;
+    }
+
+    int poll(long[] guildIds, long[] memberIds, long[] times, float[] coins, float[] xp)
+    {
+        int max = guildIds.length;
+        long position = head;
+        int n = 0;
+        while (n < max)
+        {
+            int i = (int) position & mask;
+            if (sequences.get(i) != position + 1)
+                break;
+            guildIds[n] = this.guildIds[i];
+            memberIds[n] = this.memberIds[i];
+            times[n] = this.times[i];
+            coins[n] = this.coins[i];
+            xp[n] = this.xp[i];
+            // Hands the slot back to producers one lap ahead
+            sequences.set(i, position + mask + 1);
+            position++;
+            n++;
+        }
+        head = position;
+        return n;
+    }
+
+    int size()
+    {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity()
+    {
+        return mask + 1;
+    }
+}
@@ -0,0 +1,69 @@
+package com.oopsjpeg.snubot.manager;
+
+import com.oopsjpeg.snubot.Manager;
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.util.LongObjectMap;
+import discord4j.common.util.Snowflake;
+import discord4j.core.GatewayDiscordClient;
+import discord4j.core.event.domain.guild.GuildCreateEvent;
+import discord4j.core.event.domain.guild.GuildDeleteEvent;
+import discord4j.core.event.domain.role.RoleCreateEvent;
+import discord4j.core.event.domain.role.RoleDeleteEvent;
+import discord4j.core.event.domain.role.RoleUpdateEvent;
+import discord4j.core.object.entity.Role;
+import reactor.core.publisher.Mono;
+
+public class RoleCacheManager implements Manager
+{
+    private final Snubot parent;
+    // Roles by guild, kept up to date by role events instead of fetched when needed
+    private final LongObjectMap<LongObjectMap<Role>> guildMap = new LongObjectMap<>();
+
+    public RoleCacheManager(Snubot parent)
+    {
+        this.parent = parent;
+    }
+
+    public Role getRole(long guildId, long roleId)
+    {
+        LongObjectMap<Role> roleMap = guildMap.get(guildId);
+        return roleMap != null ? roleMap.get(roleId) : null;
+    }
+
+    public Mono<Role> fetchRole(Snowflake guildId, Snowflake roleId)
+    {
+        // Only goes to Discord for roles the events haven't covered yet
+        Role role = getRole(guildId.asLong(), roleId.asLong());
+        if (role != null)
+            return Mono.just(role);
+        return parent.getGateway().getRoleById(guildId, roleId).doOnNext(this::put);
+    }
+
+    public void put(Role role)
+    {
+        guildMap.computeIfAbsent(role.getGuildId().asLong(), id -> new LongObjectMap<>()).put(role.getId().asLong(), role);
+    }
+
+    public void remove(long guildId, long roleId)
+    {
+        LongObjectMap<Role> roleMap = guildMap.get(guildId);
+        if (roleMap != null)
+            roleMap.remove(roleId);
+    }
+
+    @Override
+    public void register(GatewayDiscordClient gateway)
+    {
+        gateway.on(GuildCreateEvent.class).flatMap(e -> e.getGuild().getRoles()).subscribe(this::put);
+        gateway.on(GuildDeleteEvent.class).filter(e -> !e.isUnavailable()).subscribe(e -> guildMap.remove(e.getGuildId().asLong()));
+        gateway.on(RoleCreateEvent.class).subscribe(e -> put(e.getRole()));
+        gateway.on(RoleUpdateEvent.class).subscribe(e -> put(e.getCurrent()));
+        gateway.on(RoleDeleteEvent.class).subscribe(e -> remove(e.getGuildId().asLong(), e.getRoleId().asLong()));
+    }
+
+    @Override
+    public Snubot getParent()
+    {
+        return parent;
+    }
+}
@@ -0,0 +1,170 @@
+package com.oopsjpeg.snubot.manager;
+
+import com.oopsjpeg.snubot.Manager;
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.data.impl.GuildData;
+import com.oopsjpeg.snubot.util.LongIntMap;
+import com.oopsjpeg.snubot.util.LongObjectMap;
+import com.oopsjpeg.snubot.util.LongSet;
+import discord4j.common.util.Snowflake;
+import discord4j.core.GatewayDiscordClient;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RoleSyncManager implements Manager
+{
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final Snubot parent;
+    private final long interval;
+    private final int concurrency;
+
+    // Members waiting for a sync by guild, so repeated level-ups only sync once
+    private final LongObjectMap<LongSet> pendingMap = new LongObjectMap<>();
+    // Guilds with members waiting, taken in turns
+    private final ArrayDeque<Long> guildQueue = new ArrayDeque<>();
+    // Failed attempts by guild and member, so retries back off and eventually stop
+    private final LongObjectMap<LongIntMap> attemptMap = new LongObjectMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public RoleSyncManager(Snubot parent, long interval, int concurrency)
+    {
+        this.parent = parent;
+        this.interval = interval;
+        this.concurrency = concurrency;
+    }
+
+    public void request(GuildData data, long memberId)
+    {
+        request(data.getIdAsLong(), memberId);
+    }
+
+    private synchronized void request(long guildId, long memberId)
+    {
+        LongSet memberSet = pendingMap.get(guildId);
+        if (memberSet == null)
+        {
+            memberSet = new LongSet();
+            pendingMap.put(guildId, memberSet);
+            guildQueue.add(guildId);
+        }
+        memberSet.add(memberId);
+    }
+
+    public synchronized int getPendingCount()
+    {
+        int count = 0;
+        for (LongSet memberSet : pendingMap.values())
+            count += memberSet.size();
+        return count;
+    }
+
+    private void dispatch()
+    {
+        // At most one member per guild each round, so a burst in one guild can't hold up the rest
+        List<long[]> syncList = new ArrayList<>();
+        synchronized (this)
+        {
+            int guildCount = guildQueue.size();
+            for (int i = 0; i < guildCount && inFlight.get() + syncList.size() < concurrency; i++)
+            {
+                long guildId = guildQueue.poll();
+                LongSet memberSet = pendingMap.get(guildId);
+                syncList.add(new long[]{guildId, memberSet.poll()});
+                if (memberSet.isEmpty())
+                    pendingMap.remove(guildId);
+                else
+                    guildQueue.add(guildId);
+            }
+        }
+
+        for (long[] sync : syncList)
+        {
+            inFlight.incrementAndGet();
+            sync(sync[0], sync[1])
+                    .doFinally(signal -> inFlight.decrementAndGet())
+                    .subscribe(null, error -> retry(sync[0], sync[1], error), () -> succeeded(sync[0], sync[1]));
+        }
+    }
+
+    private Mono<Void> sync(long guildId, long memberId)
+    {
+        // An evicted guild is loaded back, which can go to Mongo, so it's kept off the dispatching thread
+        return Mono.fromCallable(() -> parent.getGuildDataCache().get(Long.toString(guildId)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(data -> parent.getGateway().getMemberById(Snowflake.of(guildId), Snowflake.of(memberId))
+                        .flatMap(data.getLeveling()::syncRoles));
+    }
+
+    private synchronized void succeeded(long guildId, long memberId)
+    {
+        LongIntMap memberAttempts = attemptMap.get(guildId);
+        if (memberAttempts == null) return;
+        memberAttempts.remove(memberId);
+        if (memberAttempts.size() == 0)
+            attemptMap.remove(guildId);
+    }
+
+    private void retry(long guildId, long memberId, Throwable error)
+    {
+        // Rate limits and other failures alike go back in the queue, each time a little later
+        int attempts;
+        synchronized (this)
+        {
+            LongIntMap memberAttempts = attemptMap.get(guildId);
+            if (memberAttempts == null)
+            {
+                memberAttempts = new LongIntMap();
+                attemptMap.put(guildId, memberAttempts);
+            }
+            attempts = Math.max(memberAttempts.get(memberId), 0) + 1;
+            if (attempts < MAX_ATTEMPTS)
+                memberAttempts.put(memberId, attempts);
+            else
+            {
+                memberAttempts.remove(memberId);
+                if (memberAttempts.size() == 0)
+                    attemptMap.remove(guildId);
+            }
+        }
+
+        if (attempts >= MAX_ATTEMPTS)
+        {
+            Snubot.LOGGER.warn("Gave up syncing level roles of member ID " + memberId + " in guild ID " + guildId
+                    + " after " + attempts + " attempt(s): " + error.getMessage());
+            return;
+        }
+        long delay = interval << attempts;
+        Snubot.LOGGER.warn("Failed to sync level roles of member ID " + memberId + " in guild ID " + guildId
+                + ", retrying in " + delay + "ms: " + error.getMessage());
+        Snubot.SCHEDULER.schedule(() -> request(guildId, memberId), delay, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void register(GatewayDiscordClient gateway)
+    {
+        Snubot.SCHEDULER.scheduleWithFixedDelay(this::dispatch, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Snubot getParent()
+    {
+        return parent;
+    }
+
+    public long getInterval()
+    {
+        return interval;
+    }
+
+    public int getConcurrency()
+    {
+        return concurrency;
+    }
+}
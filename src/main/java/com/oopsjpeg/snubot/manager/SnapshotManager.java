@@ -0,0 +1,221 @@
+package com.oopsjpeg.snubot.manager;
+
+import com.oopsjpeg.snubot.Manager;
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.data.DataCache;
+import com.oopsjpeg.snubot.data.codec.SnubotCodecProvider;
+import com.oopsjpeg.snubot.data.impl.GuildData;
+import com.oopsjpeg.snubot.data.impl.MemberData;
+import com.oopsjpeg.snubot.data.impl.UserData;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.io.BasicOutputBuffer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SnapshotManager implements Manager
+{
+    private static final int MAGIC = 0x534E5542;
+    private static final int VERSION = 1;
+
+    private static final byte USER = 'U';
+    private static final byte GUILD = 'G';
+    private static final byte MEMBER = 'M';
+    private static final byte END = 'E';
+
+    private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+    private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+
+    private final Snubot parent;
+    private final Path file;
+
+    private final Codec<UserData> userCodec;
+    private final Codec<GuildData> guildCodec;
+    private final Codec<MemberData> memberCodec;
+
+    public SnapshotManager(Snubot parent, String file)
+    {
+        this.parent = parent;
+        this.file = Paths.get(file);
+
+        CodecRegistry registry = SnubotCodecProvider.registry(id -> parent.getMemberStoreManager().open(id));
+        userCodec = registry.get(UserData.class);
+        guildCodec = registry.get(GuildData.class);
+        memberCodec = registry.get(MemberData.class);
+    }
+
+    public synchronized void write()
+    {
+        long start = System.nanoTime();
+        // Anything saved after this point gets picked up from Mongo on the next start
+        long time = System.currentTimeMillis();
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = 0;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(time);
+
+            for (UserData data : parent.getUserDataCache().values())
+            {
+                writeRecord(out, USER, userCodec, data);
+                count++;
+            }
+            // Members follow their guild, so they can be attached as they're read
+            for (GuildData data : parent.getGuildDataCache().values())
+            {
+                writeRecord(out, GUILD, guildCodec, data);
+                count++;
+                for (MemberData member : data.getMemberDataList())
+                {
+                    writeRecord(out, MEMBER, memberCodec, member);
+                    count++;
+                }
+            }
+            out.writeByte(END);
+            out.writeInt(count);
+        }
+        catch (IOException error)
+        {
+            Snubot.LOGGER.error("Failed to write snapshot: " + error.getMessage());
+            return;
+        }
+
+        try
+        {
+            // Swap it in whole, so a crash mid-write leaves the last snapshot alone
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Snubot.LOGGER.info("Wrote snapshot of " + count + " record(s) in " + elapsed(start) + "ms.");
+        }
+        catch (IOException error)
+        {
+            Snubot.LOGGER.error("Failed to move snapshot into place: " + error.getMessage());
+        }
+    }
+
+    private <T> void writeRecord(DataOutputStream out, byte type, Codec<T> codec, T data) throws IOException
+    {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        codec.encode(new BsonBinaryWriter(buffer), data, ENCODER_CONTEXT);
+        out.writeByte(type);
+        // BSON documents start with their own length, so the record needs nothing else
+        buffer.pipe(out);
+    }
+
+    public long read()
+    {
+        if (!Files.exists(file)) return -1;
+
+        long start = System.nanoTime();
+        DataCache<UserData> userDataCache = parent.getUserDataCache();
+        DataCache<GuildData> guildDataCache = parent.getGuildDataCache();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 16 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            {
+                Snubot.LOGGER.warn("Ignoring snapshot with an unknown format.");
+                return -1;
+            }
+            long time = buffer.getLong();
+
+            // Decode into lists first, so a torn snapshot doesn't leave half of itself in the caches
+            List<UserData> userList = new ArrayList<>();
+            List<GuildData> guildList = new ArrayList<>();
+            GuildData guild = null;
+            boolean warmMembers = parent.getMemberStoreManager().isWarm();
+            int count = 0;
+            while (true)
+            {
+                byte type = buffer.get();
+                if (type == END)
+                {
+                    if (buffer.getInt() != count)
+                        throw new IOException("Record count doesn't match");
+                    break;
+                }
+                if (type == USER)
+                    userList.add(readRecord(buffer, userCodec));
+                else if (type == GUILD)
+                    guildList.add(guild = readRecord(buffer, guildCodec));
+                else if (type == MEMBER && guild != null)
+                {
+                    // Warm member stores are newer than the snapshot
+                    if (warmMembers)
+                        skipRecord(buffer);
+                    else
+                        guild.putMemberData(readRecord(buffer, memberCodec));
+                }
+                else
+                    throw new IOException("Unknown record type " + type);
+                count++;
+            }
+
+            userList.forEach(d -> userDataCache.put(d.getId(), d));
+            guildList.forEach(d -> guildDataCache.put(d.getId(), d));
+            Snubot.LOGGER.info("Read snapshot of " + count + " record(s) in " + elapsed(start) + "ms.");
+            return time;
+        }
+        catch (IOException | RuntimeException error)
+        {
+            Snubot.LOGGER.warn("Ignoring unreadable snapshot: " + error.getMessage());
+            return -1;
+        }
+    }
+
+    private <T> T readRecord(MappedByteBuffer buffer, Codec<T> codec)
+    {
+        // Decode straight from the mapped file
+        int length = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt();
+        ByteBuffer slice = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        try (BsonBinaryReader reader = new BsonBinaryReader(slice))
+        {
+            return codec.decode(reader, DECODER_CONTEXT);
+        }
+    }
+
+    private void skipRecord(MappedByteBuffer buffer)
+    {
+        int length = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt();
+        buffer.position(buffer.position() + length);
+    }
+
+    private static long elapsed(long start)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    @Override
+    public Snubot getParent()
+    {
+        return parent;
+    }
+
+    public Path getFile()
+    {
+        return file;
+    }
+}
@@ -13,15 +13,15 @@ import discord4j.core.object.entity.User;
 import discord4j.core.object.reaction.ReactionEmoji;
 import reactor.core.publisher.Mono;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.oopsjpeg.snubot.react.ReactRole.Type.ONCE;
 
 public class ReactManager implements Manager
 {
     private final Snubot parent;
-    private final Map<String, ReactMessage> messageMap = new HashMap<>();
+    private final Map<String, ReactMessage> messageMap = new ConcurrentHashMap<>();
 
     public ReactManager(Snubot parent)
     {
@@ -107,11 +107,9 @@ public class ReactManager implements Manager
 
     public void remove(String id)
     {
-        if (has(id))
-        {
-            messageMap.remove(id);
-            parent.getMongoManager().removeReactMessage(get(id));
-        }
+        ReactMessage message = messageMap.remove(id);
+        if (message != null)
+            parent.getMongoManager().removeReactMessage(message);
     }
 
     public void remove(Snowflake id)
@@ -141,9 +139,8 @@ public class ReactManager implements Manager
 
     public ReactMessage getOrAdd(Message message)
     {
-        if (!has(message))
-            add(message);
-        return get(message);
+        return (ReactMessage) messageMap.computeIfAbsent(message.getId().asString(),
+                id -> new ReactMessage(id, message.getChannelId().asString())).parent(this);
     }
 
     public void update(ReactMessage reactMessage)
@@ -1,26 +1,29 @@
 package com.oopsjpeg.snubot.react;
 
+import com.oopsjpeg.snubot.data.Changes;
 import com.oopsjpeg.snubot.data.ChildData;
 import com.oopsjpeg.snubot.data.DiscordData;
 import com.oopsjpeg.snubot.data.SaveData;
+import com.oopsjpeg.snubot.data.SaveMarker;
 import com.oopsjpeg.snubot.util.Util;
 import discord4j.common.util.Snowflake;
 import discord4j.core.object.entity.Message;
 import discord4j.core.object.reaction.ReactionEmoji;
 import reactor.core.publisher.Mono;
 
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ReactMessage extends DiscordData implements ChildData<ReactManager>, SaveData
 {
     private final String channelId;
-    private final Map<String, ReactEmoji> emojiMap = new HashMap<>();
+    private final Map<String, ReactEmoji> emojiMap = new ConcurrentHashMap<>();
 
     private transient ReactManager parent;
-    private transient boolean markedForSave;
+    private final transient SaveMarker saveMarker = new SaveMarker();
+    private final transient Changes changes = new Changes(this);
 
     public ReactMessage(final String id, final String channelId)
     {
@@ -106,9 +109,7 @@ public class ReactMessage extends DiscordData implements ChildData<ReactManager>
 
     public ReactEmoji getOrAddEmoji(String emoji)
     {
-        if (!emojiMap.containsKey(emoji))
-            addEmoji(emoji);
-        return getEmoji(emoji);
+        return (ReactEmoji) emojiMap.computeIfAbsent(emoji, ReactEmoji::new).parent(this);
     }
 
     public ReactEmoji getOrAddEmoji(ReactionEmoji emoji)
@@ -116,6 +117,13 @@ public class ReactMessage extends DiscordData implements ChildData<ReactManager>
         return getOrAddEmoji(Util.emojiToString(emoji));
     }
 
+    @Override
+    public void touch()
+    {
+        if (parent != null && parent.getParent().getJournalManager() != null)
+            parent.getParent().getJournalManager().touch(this);
+    }
+
     @Override
     public ReactManager getParent()
     {
@@ -129,14 +137,14 @@ public class ReactMessage extends DiscordData implements ChildData<ReactManager>
     }
 
     @Override
-    public boolean isMarkedForSave()
+    public SaveMarker getSaveMarker()
     {
-        return markedForSave;
+        return saveMarker;
     }
 
     @Override
-    public void setMarkedForSave(boolean markedForSave)
+    public Changes getChanges()
     {
-        this.markedForSave = markedForSave;
+        return changes;
     }
 }
@@ -0,0 +1,123 @@
+package com.oopsjpeg.snubot.util;
+
+import java.util.Arrays;
+
+public class LongIntMap
+{
+    // Snowflakes are never 0, so it marks an empty slot
+    private static final long EMPTY = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    public static final int MISSING = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntMap()
+    {
+        this(4);
+    }
+
+    public LongIntMap(int expectedSize)
+    {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    private static int hash(long key)
+    {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private int indexOf(long key)
+    {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY)
+        {
+            if (keys[i] == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -(i + 1);
+    }
+
+    // Not synchronized, the owner guards it
+    public int get(long key)
+    {
+        int i = indexOf(key);
+        return i >= 0 ? values[i] : MISSING;
+    }
+
+    public void put(long key, int value)
+    {
+        if (key == EMPTY)
+            throw new IllegalArgumentException("Key can't be 0");
+        int i = indexOf(key);
+        if (i >= 0)
+        {
+            values[i] = value;
+            return;
+        }
+        keys[-i - 1] = key;
+        values[-i - 1] = value;
+        if (++size > keys.length * LOAD_FACTOR)
+            resize();
+    }
+
+    public int remove(long key)
+    {
+        int i = indexOf(key);
+        if (i < 0)
+            return MISSING;
+        int old = values[i];
+        size--;
+
+        // Shift back the entries that probed past the removed one, so lookups don't stop early
+        int mask = keys.length - 1;
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (keys[j] != EMPTY)
+        {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask))
+            {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        return old;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public void clear()
+    {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private void resize()
+    {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != EMPTY)
+            {
+                int j = -indexOf(oldKeys[i]) - 1;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+    }
+}
@@ -0,0 +1,188 @@
+package com.oopsjpeg.snubot.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongFunction;
+
+public class LongObjectMap<V>
+{
+    // Snowflakes are never 0, so it marks an empty slot
+    private static final long EMPTY = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    public LongObjectMap()
+    {
+        this(4);
+    }
+
+    public LongObjectMap(int expectedSize)
+    {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    private static int hash(long key)
+    {
+        // Spread the timestamp bits so neighbouring snowflakes don't cluster
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private int indexOf(long key)
+    {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY)
+        {
+            if (keys[i] == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -(i + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized V get(long key)
+    {
+        int i = indexOf(key);
+        return i >= 0 ? (V) values[i] : null;
+    }
+
+    public synchronized boolean containsKey(long key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized V put(long key, V value)
+    {
+        if (key == EMPTY)
+            throw new IllegalArgumentException("Key can't be 0");
+        int i = indexOf(key);
+        if (i >= 0)
+        {
+            V old = (V) values[i];
+            values[i] = value;
+            return old;
+        }
+        insert(-i - 1, key, value);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized V putIfAbsent(long key, V value)
+    {
+        int i = indexOf(key);
+        if (i >= 0)
+            return (V) values[i];
+        put(key, value);
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized V computeIfAbsent(long key, LongFunction<V> function)
+    {
+        int i = indexOf(key);
+        if (i >= 0)
+            return (V) values[i];
+        V value = function.apply(key);
+        put(key, value);
+        return value;
+    }
+
+    public synchronized void putAll(LongObjectMap<V> map)
+    {
+        map.forEach(this::put);
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized V remove(long key)
+    {
+        int i = indexOf(key);
+        if (i < 0)
+            return null;
+        V old = (V) values[i];
+        size--;
+
+        // Shift back the entries that probed past the removed one, so lookups don't stop early
+        int mask = keys.length - 1;
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (keys[j] != EMPTY)
+        {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask))
+            {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        values[gap] = null;
+        return old;
+    }
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized List<V> values()
+    {
+        // A copy, so callers can iterate while the map keeps changing
+        List<V> list = new ArrayList<>(size);
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != EMPTY)
+                list.add((V) values[i]);
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    public synchronized void forEach(Entry<V> consumer)
+    {
+        for (int i = 0; i < keys.length; i++)
+            if (keys[i] != EMPTY)
+                consumer.accept(keys[i], (V) values[i]);
+    }
+
+    private void insert(int i, long key, V value)
+    {
+        keys[i] = key;
+        values[i] = value;
+        if (++size > keys.length * LOAD_FACTOR)
+            resize();
+    }
+
+    private void resize()
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != EMPTY)
+            {
+                int j = -indexOf(oldKeys[i]) - 1;
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+    }
+
+    public interface Entry<V>
+    {
+        void accept(long key, V value);
+    }
+}
@@ -0,0 +1,131 @@
+package com.oopsjpeg.snubot.util;
+
+import java.util.function.LongConsumer;
+
+public class LongSet
+{
+    // Snowflakes are never 0, so it marks an empty slot
+    private static final long EMPTY = 0;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys = new long[4];
+    private int size;
+
+    private static int hash(long key)
+    {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private int indexOf(long key)
+    {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY)
+        {
+            if (keys[i] == key)
+                return i;
+            i = (i + 1) & mask;
+        }
+        return -(i + 1);
+    }
+
+    public synchronized boolean contains(long key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    public synchronized boolean add(long key)
+    {
+        if (key == EMPTY)
+            throw new IllegalArgumentException("Key can't be 0");
+        int i = indexOf(key);
+        if (i >= 0)
+            return false;
+        keys[-i - 1] = key;
+        if (++size > keys.length * LOAD_FACTOR)
+            resize();
+        return true;
+    }
+
+    public synchronized boolean remove(long key)
+    {
+        int i = indexOf(key);
+        if (i < 0)
+            return false;
+        size--;
+
+        // Shift back the keys that probed past the removed one, so lookups don't stop early
+        int mask = keys.length - 1;
+        int gap = i;
+        int j = (i + 1) & mask;
+        while (keys[j] != EMPTY)
+        {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask))
+            {
+                keys[gap] = keys[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        return true;
+    }
+
+    public synchronized long poll()
+    {
+        // Takes out any one key, or returns 0 if there are none
+        if (size == 0)
+            return EMPTY;
+        for (long key : keys)
+            if (key != EMPTY)
+            {
+                remove(key);
+                return key;
+            }
+        return EMPTY;
+    }
+
+    public synchronized void clear()
+    {
+        keys = new long[4];
+        size = 0;
+    }
+
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public synchronized long[] toArray()
+    {
+        long[] array = new long[size];
+        int n = 0;
+        for (long key : keys)
+            if (key != EMPTY)
+                array[n++] = key;
+        return array;
+    }
+
+    public void forEach(LongConsumer consumer)
+    {
+        // Iterates a copy, so the consumer is free to change the set
+        for (long key : toArray())
+            consumer.accept(key);
+    }
+
+    private void resize()
+    {
+        long[] oldKeys = keys;
+        keys = new long[oldKeys.length * 2];
+        for (long key : oldKeys)
+            if (key != EMPTY)
+                keys[-indexOf(key) - 1] = key;
+    }
+}
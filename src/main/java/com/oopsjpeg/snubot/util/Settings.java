@@ -11,6 +11,30 @@ public class Settings
     public static final String PREFIX = "prefix";
     public static final String MONGO_HOST = "mongo_host";
     public static final String MONGO_DATABASE = "mongo_database";
+    public static final String MONGO_BATCH_SIZE = "mongo_batch_size";
+    public static final String MONGO_BATCH_RETRIES = "mongo_batch_retries";
+    public static final String PRELOAD_DATA = "preload_data";
+    public static final String USER_CACHE_SIZE = "user_cache_size";
+    public static final String GUILD_CACHE_WEIGHT = "guild_cache_weight";
+    public static final String JOURNAL_DIRECTORY = "journal_directory";
+    public static final String JOURNAL_SYNC_INTERVAL = "journal_sync_interval";
+    public static final String SNAPSHOT_FILE = "snapshot_file";
+    public static final String SNAPSHOT_INTERVAL = "snapshot_interval";
+    public static final String MEMBER_STORE = "member_store";
+    public static final String MEMBER_STORE_DIRECTORY = "member_store_directory";
+    public static final String ROLE_SYNC_INTERVAL = "role_sync_interval";
+    public static final String ROLE_SYNC_CONCURRENCY = "role_sync_concurrency";
+    public static final String COMMAND_THREADS = "command_threads";
+    public static final String COMMAND_QUEUE_SIZE = "command_queue_size";
+    public static final String COMMAND_GUILD_LIMIT = "command_guild_limit";
+    public static final String COMMAND_USER_LIMIT = "command_user_limit";
+    public static final String COMMAND_TIMEOUT = "command_timeout";
+    public static final String RATE_LIMIT_WINDOW = "rate_limit_window";
+    public static final String RATE_LIMIT_USER = "rate_limit_user";
+    public static final String RATE_LIMIT_CHANNEL = "rate_limit_channel";
+    public static final String RATE_LIMIT_GUILD = "rate_limit_guild";
+    public static final String RATE_LIMIT_SIZE = "rate_limit_size";
+    public static final String PERMISSION_MEMBER_LIMIT = "permission_member_limit";
 
     private static final Properties DEFAULTS = new Properties();
 
@@ -20,6 +44,30 @@ public class Settings
         DEFAULTS.put(PREFIX, "s!");
         DEFAULTS.put(MONGO_HOST, "localhost");
         DEFAULTS.put(MONGO_DATABASE, "snubot");
+        DEFAULTS.put(MONGO_BATCH_SIZE, "500");
+        DEFAULTS.put(MONGO_BATCH_RETRIES, "3");
+        DEFAULTS.put(PRELOAD_DATA, "false");
+        DEFAULTS.put(USER_CACHE_SIZE, "100000");
+        DEFAULTS.put(GUILD_CACHE_WEIGHT, "1000000");
+        DEFAULTS.put(JOURNAL_DIRECTORY, "journal");
+        DEFAULTS.put(JOURNAL_SYNC_INTERVAL, "1000");
+        DEFAULTS.put(SNAPSHOT_FILE, "snapshot.bin");
+        DEFAULTS.put(SNAPSHOT_INTERVAL, "10");
+        DEFAULTS.put(MEMBER_STORE, "heap");
+        DEFAULTS.put(MEMBER_STORE_DIRECTORY, "members");
+        DEFAULTS.put(ROLE_SYNC_INTERVAL, "1000");
+        DEFAULTS.put(ROLE_SYNC_CONCURRENCY, "8");
+        DEFAULTS.put(COMMAND_THREADS, "16");
+        DEFAULTS.put(COMMAND_QUEUE_SIZE, "1000");
+        DEFAULTS.put(COMMAND_GUILD_LIMIT, "8");
+        DEFAULTS.put(COMMAND_USER_LIMIT, "2");
+        DEFAULTS.put(COMMAND_TIMEOUT, "30000");
+        DEFAULTS.put(RATE_LIMIT_WINDOW, "10000");
+        DEFAULTS.put(RATE_LIMIT_USER, "5");
+        DEFAULTS.put(RATE_LIMIT_CHANNEL, "15");
+        DEFAULTS.put(RATE_LIMIT_GUILD, "40");
+        DEFAULTS.put(RATE_LIMIT_SIZE, "10000");
+        DEFAULTS.put(PERMISSION_MEMBER_LIMIT, "1000");
     }
 
     private final Properties properties = new Properties();
@@ -45,6 +93,16 @@ public class Settings
         return get(key, DEFAULTS.getProperty(key, ""));
     }
 
+    public int getInt(String key)
+    {
+        return Integer.parseInt(get(key));
+    }
+
+    public boolean getBoolean(String key)
+    {
+        return Boolean.parseBoolean(get(key));
+    }
+
     public void put(String key, String value)
     {
         properties.put(key, value);
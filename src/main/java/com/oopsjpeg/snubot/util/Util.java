@@ -1,9 +1,7 @@
 package com.oopsjpeg.snubot.util;
 
 import discord4j.common.util.Snowflake;
-import discord4j.core.object.entity.channel.TextChannel;
 import discord4j.core.object.reaction.ReactionEmoji;
-import discord4j.rest.util.PermissionSet;
 
 import java.text.NumberFormat;
 import java.time.Duration;
@@ -49,42 +47,11 @@ public class Util
         return s1.equalsIgnoreCase(s2) || (s1.length() > 3 && (s1.contains(s2) || s2.contains(s1)));
     }
 
-    public static String[] buildArguments(String s)
-    {
-        String[] split = s.split(" ");
-        // Toss the first index, it's the alias
-        List<String> base = Arrays.asList(Arrays.copyOfRange(split, 1, split.length));
-        List<String> args = new ArrayList<>();
-
-        boolean next = true;
-        for (int i = 0; i < base.size(); i++)
-        {
-            String value = base.get(i);
-
-            if (next) args.add(value.replaceAll("\"", ""));
-            else args.set(args.size() - 1, args.get(args.size() - 1) + " " + value.replaceAll("\"", ""));
-
-            // If value starts with " and can be matched
-            if (value.startsWith("\"") && base.subList(i + 1, base.size()).stream().anyMatch(a -> a.contains("\"")))
-                next = false;
-            // If value ends with "
-            if (value.endsWith("\""))
-                next = true;
-        }
-
-        return args.toArray(new String[0]);
-    }
-
     public static boolean isDigits(String s)
     {
         return s.matches("-?\\d+(\\.\\d+)?");
     }
 
-    public static boolean hasPermissions(TextChannel channel, Snowflake userId, PermissionSet permissionSet)
-    {
-        return channel.getEffectivePermissions(userId).block().containsAll(permissionSet);
-    }
-
     public static String timeDiff(LocalDateTime date1, LocalDateTime date2) {
         Duration duration = Duration.between(date1, date2);
         Stack<String> stack = new Stack<>();
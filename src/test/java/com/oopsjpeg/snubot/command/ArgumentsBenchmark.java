@@ -0,0 +1,79 @@
+package com.oopsjpeg.snubot.command;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Splitting a command into arguments, on a typical message and on one built to be slow.
+// The old Util.buildArguments is kept here as it was.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArgumentsBenchmark
+{
+    private static final String PREFIX = "s!";
+
+    @Param({"typical", "quotes"})
+    public String message;
+
+    private String content;
+
+    @Setup
+    public void setup()
+    {
+        if (message.equals("typical"))
+            content = PREFIX + "level add \"Cool Role Name\" 10";
+        else
+        {
+            // Every word opens a quote, and only the last one is ever closed
+            StringBuilder builder = new StringBuilder(PREFIX + "level add ");
+            for (int i = 0; i < 2000; i++)
+                builder.append("\"word ");
+            content = builder.append("end\"").toString();
+        }
+    }
+
+    @Benchmark
+    public String[] arguments()
+    {
+        return Arguments.parse(content, PREFIX.length()).toArray(1);
+    }
+
+    @Benchmark
+    public String[] buildArguments()
+    {
+        return buildArguments(content.substring(PREFIX.length()));
+    }
+
+    private static String[] buildArguments(String s)
+    {
+        String[] split = s.split(" ");
+        // Toss the first index, it's the alias
+        List<String> base = Arrays.asList(Arrays.copyOfRange(split, 1, split.length));
+        List<String> args = new ArrayList<>();
+
+        boolean next = true;
+        for (int i = 0; i < base.size(); i++)
+        {
+            String value = base.get(i);
+
+            if (next) args.add(value.replaceAll("\"", ""));
+            else args.set(args.size() - 1, args.get(args.size() - 1) + " " + value.replaceAll("\"", ""));
+
+            // If value starts with " and can be matched
+            if (value.startsWith("\"") && base.subList(i + 1, base.size()).stream().anyMatch(a -> a.contains("\"")))
+                next = false;
+            // If value ends with "
+            if (value.endsWith("\""))
+                next = true;
+        }
+
+        return args.toArray(new String[0]);
+    }
+}
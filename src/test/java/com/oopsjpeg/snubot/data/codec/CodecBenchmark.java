@@ -0,0 +1,105 @@
+package com.oopsjpeg.snubot.data.codec;
+
+import com.oopsjpeg.snubot.data.impl.GuildData;
+import com.oopsjpeg.snubot.data.impl.MemberData;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// Guild and member documents through the codecs, against the JSON string step the old Gson path also took.
+// The Gson mapping itself can't be rebuilt against the current data classes, so the JSON side is a lower bound on the old cost.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark
+{
+    @Param({"10", "100"})
+    public int roles;
+
+    private Codec<GuildData> guildCodec;
+    private Codec<MemberData> memberCodec;
+    private GuildData guild;
+    private MemberData member;
+    private byte[] guildBytes;
+    private byte[] memberBytes;
+    private String guildJson;
+
+    @Setup
+    public void setup()
+    {
+        guildCodec = SnubotCodecProvider.REGISTRY.get(GuildData.class);
+        memberCodec = SnubotCodecProvider.REGISTRY.get(MemberData.class);
+
+        guild = new GuildData("100000000000000001");
+        guild.getLeveling().setMaxLevel(100);
+        for (int i = 0; i < roles; i++)
+            guild.getLeveling().addRole(200000000000000000L + i, i % 100);
+        guild.setPrefix("s?");
+        member = new MemberData("300000000000000001", guild.getId(), 1234, 567, 12, LocalDateTime.now());
+
+        guildBytes = encode(guildCodec, guild);
+        memberBytes = encode(memberCodec, member);
+        guildJson = decode(SnubotCodecProvider.REGISTRY.get(Document.class), guildBytes).toJson();
+    }
+
+    private static <T> byte[] encode(Codec<T> codec, T value)
+    {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer))
+        {
+            codec.encode(writer, value, EncoderContext.builder().build());
+        }
+        return buffer.toByteArray();
+    }
+
+    private static <T> T decode(Codec<T> codec, byte[] bytes)
+    {
+        try (BsonBinaryReader reader = new BsonBinaryReader(ByteBuffer.wrap(bytes)))
+        {
+            return codec.decode(reader, DecoderContext.builder().build());
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeGuild()
+    {
+        return encode(guildCodec, guild);
+    }
+
+    @Benchmark
+    public GuildData decodeGuild()
+    {
+        return decode(guildCodec, guildBytes);
+    }
+
+    @Benchmark
+    public byte[] encodeMember()
+    {
+        return encode(memberCodec, member);
+    }
+
+    @Benchmark
+    public MemberData decodeMember()
+    {
+        return decode(memberCodec, memberBytes);
+    }
+
+    @Benchmark
+    public String guildJsonRoundTrip()
+    {
+        // What the old path did besides Gson: parse its JSON into a document to save, and print one back out to load
+        return Document.parse(guildJson).toJson();
+    }
+}
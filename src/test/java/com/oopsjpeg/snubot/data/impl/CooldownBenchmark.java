@@ -0,0 +1,41 @@
+package com.oopsjpeg.snubot.data.impl;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+// A message from a member still on cooldown, which is most of them in a busy channel.
+// The old check is kept here as it was, working from a LocalDateTime field.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CooldownBenchmark
+{
+    private MemberData member;
+    private LocalDateTime lastMessageTime;
+
+    @Setup
+    public void setup()
+    {
+        GuildData guild = new GuildData("100000000000000001");
+        member = guild.addMemberData(300000000000000001L);
+        member.message();
+        lastMessageTime = LocalDateTime.now();
+    }
+
+    @Benchmark
+    public boolean message()
+    {
+        return member.message();
+    }
+
+    @Benchmark
+    public boolean localDateTimeCheck()
+    {
+        return lastMessageTime == null || LocalDateTime.now().isAfter(lastMessageTime.plusMinutes(1));
+    }
+}
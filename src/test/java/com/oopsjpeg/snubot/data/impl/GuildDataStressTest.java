@@ -0,0 +1,47 @@
+package com.oopsjpeg.snubot.data.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+// Changes against a guild while saves drain it, checking nothing is lost in between
+public class GuildDataStressTest
+{
+    @Test
+    public void marksDuringSavesStayMarked() throws InterruptedException
+    {
+        GuildData guild = new GuildData("1");
+        AtomicBoolean done = new AtomicBoolean();
+        long[] savedVersion = {0};
+
+        Thread marker = new Thread(() ->
+        {
+            for (int i = 0; i < 200_000; i++)
+                guild.markForSave();
+        });
+        Thread saver = new Thread(() ->
+        {
+            // A save takes the version before it encodes, and clears only that version
+            while (!done.get())
+            {
+                long version = guild.getSaveMarker().getVersion();
+                guild.getSaveMarker().saved(version);
+                savedVersion[0] = version;
+            }
+        });
+
+        saver.start();
+        marker.start();
+        marker.join();
+        done.set(true);
+        saver.join();
+
+        // Anything marked after the last save taken is still waiting for the next one
+        assertEquals(savedVersion[0] < guild.getSaveMarker().getVersion(), guild.isMarkedForSave());
+        guild.getSaveMarker().saved(guild.getSaveMarker().getVersion());
+        assertFalse(guild.isMarkedForSave());
+    }
+}
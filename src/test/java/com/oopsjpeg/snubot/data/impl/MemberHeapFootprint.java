@@ -0,0 +1,135 @@
+package com.oopsjpeg.snubot.data.impl;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Heap taken by each member, measured as used heap before and after filling guilds with them.
+// Both the String-keyed objects members used to be and the current store are filled, one after the other.
+// Steadiest under the serial collector:
+// mvn test-compile exec:exec -Pbenchmark -Dbenchmark.main=com.oopsjpeg.snubot.data.impl.MemberHeapFootprint -Dbenchmark=1000000 -Dbenchmark.jvm=-XX:+UseSerialGC
+public class MemberHeapFootprint
+{
+    private static final int GUILDS = 2000;
+
+    public static void main(String[] args)
+    {
+        int members = args.length > 0 && args[0].matches("\\d+") ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.println(members + " members across " + GUILDS + " guilds");
+        measureLegacy(members);
+        measureCurrent(members);
+    }
+
+    private static void measureCurrent(int members)
+    {
+        long before = usedHeap();
+        List<GuildData> guildList = new ArrayList<>(GUILDS);
+        for (int g = 0; g < GUILDS; g++)
+            guildList.add(new GuildData(Long.toString(100000000000000000L + g)));
+        long empty = usedHeap();
+
+        // Snowflake-sized IDs, spread evenly over the guilds
+        for (int i = 0; i < members; i++)
+        {
+            MemberData member = guildList.get(i % GUILDS).addMemberData(300000000000000000L + i * 4099L);
+            member.setCoins(i % 1000);
+            member.setXp(i % 500);
+        }
+        long full = usedHeap();
+
+        report("Current", before, empty, full, members);
+        // Keeps everything reachable until it's been measured
+        System.out.println(guildList.stream().mapToInt(GuildData::getMemberCount).sum() + " members held");
+    }
+
+    private static void measureLegacy(int members)
+    {
+        long before = usedHeap();
+        List<LegacyGuild> guildList = new ArrayList<>(GUILDS);
+        for (int g = 0; g < GUILDS; g++)
+            guildList.add(new LegacyGuild(Long.toString(100000000000000000L + g)));
+        long empty = usedHeap();
+
+        for (int i = 0; i < members; i++)
+        {
+            LegacyGuild guild = guildList.get(i % GUILDS);
+            String id = Long.toString(300000000000000000L + i * 4099L);
+            LegacyMember member = new LegacyMember(id, guild);
+            member.coins = i % 1000;
+            member.xp = i % 500;
+            guild.memberDataMap.put(id, member);
+        }
+        long full = usedHeap();
+
+        report("String-keyed", before, empty, full, members);
+        System.out.println(guildList.stream().mapToInt(g -> g.memberDataMap.size()).sum() + " members held");
+    }
+
+    private static void report(String layout, long before, long empty, long full, int members)
+    {
+        System.out.println(layout + " guilds: " + (empty - before) / GUILDS + " bytes each");
+        System.out.println(layout + " members: " + (full - empty) / members + " bytes each");
+    }
+
+    private static long usedHeap()
+    {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++)
+            System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // The fields a member was made of before IDs were longs and members moved into a store,
+    // with the per-member save marker and change tracker it carried at the time
+    private static class LegacyGuild
+    {
+        private final String id;
+        private final Map<String, LegacyMember> memberDataMap = new ConcurrentHashMap<>();
+
+        private LegacyGuild(String id)
+        {
+            this.id = id;
+        }
+    }
+
+    private static class LegacyMember
+    {
+        private final String id;
+        private final String guildId;
+        private final LegacyGuild parent;
+        private LocalDateTime lastMessageTime;
+        private final LegacyMarker saveMarker = new LegacyMarker();
+        private final LegacyChanges changes = new LegacyChanges(this);
+        private float coins;
+        private float xp;
+        private int level;
+        private LocalDateTime lastDailyTime;
+
+        private LegacyMember(String id, LegacyGuild parent)
+        {
+            this.id = id;
+            this.parent = parent;
+            guildId = parent.id;
+        }
+    }
+
+    private static class LegacyMarker
+    {
+        private final AtomicLong version = new AtomicLong();
+        private volatile long savedVersion;
+    }
+
+    private static class LegacyChanges
+    {
+        private final Object owner;
+        private final Map<String, Object> setMap = new LinkedHashMap<>();
+        private final Map<String, Number> incMap = new LinkedHashMap<>();
+        private final Set<String> unsetSet = new LinkedHashSet<>();
+
+        private LegacyChanges(Object owner)
+        {
+            this.owner = owner;
+        }
+    }
+}
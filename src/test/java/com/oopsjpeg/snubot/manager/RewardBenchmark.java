@@ -0,0 +1,74 @@
+package com.oopsjpeg.snubot.manager;
+
+import com.oopsjpeg.snubot.data.impl.GuildData;
+import com.oopsjpeg.snubot.data.impl.MemberData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Message rewards for one guild, through the ring and a batched fold, against rewarding each member on its own.
+// The cooldown is off, so every message goes all the way through.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RewardBenchmark
+{
+    private static final int BATCH = 1024;
+
+    @Param({"1000", "100000"})
+    public int members;
+
+    private GuildData guild;
+    private RewardRing ring;
+    private long[] ids;
+
+    private final long[] guildIds = new long[BATCH];
+    private final long[] memberIds = new long[BATCH];
+    private final long[] times = new long[BATCH];
+    private final float[] coins = new float[BATCH];
+    private final float[] xp = new float[BATCH];
+
+    @Setup
+    public void setup()
+    {
+        guild = new GuildData("100000000000000001");
+        guild.getLeveling().setMessageCooldown(0);
+        ring = new RewardRing(BATCH);
+        ids = new long[members];
+        for (int i = 0; i < members; i++)
+        {
+            ids[i] = 300000000000000000L + i * 4099L;
+            guild.addMemberData(ids[i]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void ringAndFold()
+    {
+        // What the event threads publish and one partition folds in
+        long time = System.currentTimeMillis();
+        for (int i = 0; i < BATCH; i++)
+            ring.offer(guild.getIdAsLong(), randomId(), time, MemberData.rollMessageCoins(), MemberData.rollMessageXp());
+        int count = ring.poll(guildIds, memberIds, times, coins, xp);
+        guild.reward(memberIds, times, coins, xp, count);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void eachMember()
+    {
+        // The member lookup and message() each event used to make on its own
+        for (int i = 0; i < BATCH; i++)
+            guild.getOrAddMemberData(randomId()).message();
+    }
+
+    private long randomId()
+    {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+}
@@ -0,0 +1,184 @@
+package com.oopsjpeg.snubot.manager;
+
+import com.mongodb.MongoNamespace;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.WriteRequest;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.oopsjpeg.snubot.Snubot;
+import com.oopsjpeg.snubot.data.DataCache;
+import com.oopsjpeg.snubot.data.codec.SnubotCodecProvider;
+import com.oopsjpeg.snubot.data.impl.GuildData;
+import com.oopsjpeg.snubot.data.impl.MemberData;
+import org.bson.BsonDocument;
+import org.bson.BsonDouble;
+import org.bson.BsonInt32;
+import org.bson.BsonValue;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+// Rewards published and folded in while saves drain the member store, checking what reaches Mongo adds up
+public class RewardSaveStressTest
+{
+    private static final int MEMBERS = 64;
+    private static final int PUBLISHERS = 4;
+    private static final int MESSAGES = 50_000;
+
+    @Test
+    public void rewardsAndSavesLoseNothing() throws InterruptedException
+    {
+        GuildData guild = new GuildData("1");
+        guild.getLeveling().setMessageCooldown(0);
+        DataCache<GuildData> cache = new DataCache<>("guild(s)", id -> null, d -> {}, d -> false, d -> false, d -> 1, Long.MAX_VALUE);
+        cache.put(guild.getId(), guild);
+        Snubot bot = new Snubot()
+        {
+            @Override
+            public DataCache<GuildData> getGuildDataCache()
+            {
+                return cache;
+            }
+        };
+
+        List<WriteModel<BsonDocument>> writeList = Collections.synchronizedList(new ArrayList<>());
+        MongoManager mongo = new MongoManager(bot, null, database(writeList), 100, 0);
+        LevelManager levels = new LevelManager(bot);
+
+        // Every reward is worth one coin, so each member's coins count the rewards that were taken
+        AtomicLongArray acceptedArray = new AtomicLongArray(MEMBERS);
+        AtomicBoolean done = new AtomicBoolean();
+        List<Thread> publisherList = new ArrayList<>();
+        for (int p = 0; p < PUBLISHERS; p++)
+            publisherList.add(new Thread(() ->
+            {
+                Random random = new Random();
+                for (int i = 0; i < MESSAGES; i++)
+                {
+                    int member = random.nextInt(MEMBERS);
+                    if (levels.publish(guild.getIdAsLong(), memberId(member), 1, 1, 1 + random.nextInt(40)))
+                        acceptedArray.incrementAndGet(member);
+                }
+            }));
+        Thread folder = new Thread(() ->
+        {
+            while (!done.get())
+                levels.foldAll();
+        });
+        Thread saver = new Thread(() ->
+        {
+            while (!done.get())
+                mongo.saveMemberStores(Collections.singletonList(guild)).join();
+        });
+
+        folder.start();
+        saver.start();
+        publisherList.forEach(Thread::start);
+        for (Thread publisher : publisherList)
+            publisher.join();
+        done.set(true);
+        folder.join();
+        saver.join();
+        levels.foldAll();
+        mongo.saveMemberStores(Collections.singletonList(guild)).join();
+
+        assertFalse(guild.getMemberStore().hasDirty());
+        Map<String, BsonDocument> documentMap = apply(writeList);
+        for (int member = 0; member < MEMBERS; member++)
+        {
+            MemberData data = guild.getMemberData(memberId(member));
+            BsonDocument document = documentMap.get(Long.toString(memberId(member)));
+            assertNotNull(document);
+            assertEquals(acceptedArray.get(member), (long) data.getCoins());
+            assertEquals(data.getCoins(), document.getNumber("coins").doubleValue());
+            assertEquals(data.getXp(), document.getNumber("xp").doubleValue());
+            // Decoding treats a missing level as 0, like a member that never leveled up
+            assertEquals(data.getLevel(), document.getNumber("level", new BsonInt32(0)).intValue());
+        }
+    }
+
+    private static long memberId(int member)
+    {
+        return 300000000000000000L + member;
+    }
+
+    private static Map<String, BsonDocument> apply(List<WriteModel<BsonDocument>> writeList)
+    {
+        // Plays the updates back the way Mongo would, one member document each
+        Map<String, BsonDocument> documentMap = new HashMap<>();
+        for (WriteModel<BsonDocument> write : writeList)
+        {
+            UpdateOneModel<BsonDocument> update = (UpdateOneModel<BsonDocument>) write;
+            BsonDocument filter = update.getFilter().toBsonDocument(BsonDocument.class, SnubotCodecProvider.REGISTRY);
+            String memberId = filter.getString("memberId").getValue();
+            BsonDocument document = documentMap.computeIfAbsent(memberId, id -> new BsonDocument());
+            BsonDocument operators = update.getUpdate().toBsonDocument(BsonDocument.class, SnubotCodecProvider.REGISTRY);
+            if (operators.containsKey("$set"))
+                document.putAll(operators.getDocument("$set"));
+            if (operators.containsKey("$inc"))
+                for (Map.Entry<String, BsonValue> inc : operators.getDocument("$inc").entrySet())
+                {
+                    double value = document.containsKey(inc.getKey()) ? document.getNumber(inc.getKey()).doubleValue() : 0;
+                    document.put(inc.getKey(), new BsonDouble(value + inc.getValue().asNumber().doubleValue()));
+                }
+        }
+        return documentMap;
+    }
+
+    private static MongoDatabase database(List<WriteModel<BsonDocument>> writeList)
+    {
+        Map<String, MongoCollection<?>> collectionMap = new HashMap<>();
+        return proxy(MongoDatabase.class, (self, method, args) ->
+        {
+            switch (method.getName())
+            {
+                case "withCodecRegistry":
+                    return self;
+                case "getCollection":
+                    return collectionMap.computeIfAbsent((String) args[0], name -> collection(name, writeList));
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MongoCollection<?> collection(String name, List<WriteModel<BsonDocument>> writeList)
+    {
+        // Only the members collection is written to here, and each write is kept to be played back
+        return proxy(MongoCollection.class, (self, method, args) ->
+        {
+            switch (method.getName())
+            {
+                case "createIndex":
+                    return name;
+                case "withDocumentClass":
+                    return self;
+                case "getNamespace":
+                    return new MongoNamespace("snubot", name);
+                case "bulkWrite":
+                    List<WriteModel<BsonDocument>> modelList = (List<WriteModel<BsonDocument>>) args[0];
+                    writeList.addAll(modelList);
+                    return BulkWriteResult.acknowledged(WriteRequest.Type.UPDATE, modelList.size(), modelList.size(), Collections.emptyList());
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> clazz, InvocationHandler handler)
+    {
+        return (T) Proxy.newProxyInstance(clazz.getClassLoader(), new Class<?>[]{clazz}, handler);
+    }
+}